@@ -0,0 +1,27 @@
+package com.hsf;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Điểm vào của benchmarks.jar: như org.openjdk.jmh.Main nhưng luôn bật GC profiler để báo
+ * tốc độ cấp phát (gc.alloc.rate.norm, byte/op) cạnh độ trễ.
+ * Chạy: java -jar benchmarks/target/benchmarks.jar [tham số JMH, ví dụ LicenseJson -f 1]
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
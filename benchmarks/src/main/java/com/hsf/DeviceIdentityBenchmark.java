@@ -0,0 +1,34 @@
+package com.hsf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Controller.getDeviceId(): đường nóng (đã cache) được gọi mỗi lần kích hoạt / hủy kích hoạt,
+ * và DeviceIdentity.compute() (duyệt network interface) chỉ chạy khi chưa có file cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlicense.log.level=OFF")
+public class DeviceIdentityBenchmark {
+
+    @Benchmark
+    public String cachedDeviceId() {
+        return Controller.getDeviceId();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String computeDeviceId() {
+        return DeviceIdentity.compute();
+    }
+}
@@ -0,0 +1,103 @@
+package com.hsf;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heartbeat đầu-cuối qua loopback với StubLicenseServer (không có độ trễ hay lỗi giả lập):
+ * POST /heartbeat, POST /heartbeat/batch và HEARTBEAT → HEARTBEAT_ACK trên WebSocket.
+ * SampleTime để JMH báo cả percentile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlicense.log.level=OFF")
+public class HeartbeatRoundTripBenchmark {
+
+    private static final String DEVICE_ID = "BENCH0000001";
+    private static final int LICENSES = 5;
+
+    private StubLicenseServer server;
+    private LicenseTransport transport;
+    private LicenseWebSocketClient socket;
+    private final List<LicenseRequest> licenses = new ArrayList<>();
+    private final BlockingQueue<PushMessage> acks = new ArrayBlockingQueue<>(16);
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new StubLicenseServer(new StubLicenseServer.Config(0, 0, Duration.ZERO, Duration.ZERO, 0,
+                Duration.ZERO, 0, null, true, true, null)).start();
+        transport = new LicenseTransport(server.getHttpUrl(), HttpClient.Version.HTTP_1_1, null,
+                Duration.ofSeconds(3), Duration.ofSeconds(5));
+        for (int i = 0; i < LICENSES; i++) {
+            String licenseKey = "BENCH-" + i;
+            if (transport.activate(licenseKey, DEVICE_ID, "Product 2").statusCode() != 200) {
+                throw new IllegalStateException("Stub rejected activation of " + licenseKey);
+            }
+            licenses.add(new LicenseRequest(licenseKey, DEVICE_ID, "Product 2"));
+        }
+        socket = LicenseWebSocketClient.create(server.getWsUrl(), () -> List.of("BENCH-0"), DEVICE_ID,
+                new LicenseWebSocketClient.Listener() {
+                    @Override
+                    public void onChannelOpen() {
+                    }
+
+                    @Override
+                    public void onChannelClosed() {
+                    }
+
+                    @Override
+                    public void onPush(PushMessage message) {
+                        if ("HEARTBEAT_ACK".equals(message.type())) {
+                            acks.offer(message);
+                        }
+                    }
+                });
+        if (!socket.connectBlocking(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Cannot connect to stub WebSocket");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        socket.shutdown();
+        server.stop();
+    }
+
+    @Benchmark
+    public int httpHeartbeat() throws Exception {
+        return transport.heartbeat("BENCH-0", DEVICE_ID).statusCode();
+    }
+
+    @Benchmark
+    public int httpHeartbeatBatch() throws Exception {
+        return transport.post("/heartbeat/batch", LicenseJson.encodeBatch(DEVICE_ID, licenses)).statusCode();
+    }
+
+    @Benchmark
+    public PushMessage wsHeartbeat() throws Exception {
+        if (!socket.sendHeartbeat()) {
+            throw new IllegalStateException("WebSocket closed");
+        }
+        return acks.poll(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,78 @@
+package com.hsf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mã hóa body request (như mỗi nhịp heartbeat HTTP) và đọc message lỗi từ response
+ * (Controller.getErrorMessageFromResponse dùng LicenseJson.errorMessage).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlicense.log.level=OFF")
+public class LicenseJsonBenchmark {
+
+    private static final String LICENSE_KEY = "ABCD-EFGH-IJKL-MNOP";
+    private static final String DEVICE_ID = "0A1B2C3D4E5F";
+
+    @Param({ "5" })
+    private int batchSize;
+
+    private List<LicenseRequest> batch;
+    private String errorBody;
+    private String batchResponse;
+
+    @Setup
+    public void setUp() {
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new LicenseRequest(LICENSE_KEY + "-" + i, DEVICE_ID, "Product 2"));
+        }
+        errorBody = "{\"timestamp\":\"2024-01-01T00:00:00Z\",\"status\":403,\"error\":\"Forbidden\","
+                + "\"message\":\"License đã bị vô hiệu hóa bởi quản trị viên\",\"path\":\"/api/license/heartbeat\"}";
+        batchResponse = "{\"nextHeartbeatSeconds\":30,\"results\":[{\"licenseKey\":\"" + LICENSE_KEY
+                + "-1\",\"ok\":false,\"message\":\"License expired\"}]}";
+    }
+
+    @Benchmark
+    public String encodeHeartbeat() {
+        return LicenseJson.encode(new LicenseRequest(LICENSE_KEY, DEVICE_ID));
+    }
+
+    @Benchmark
+    public String encodeHeartbeatBatch() {
+        return LicenseJson.encodeBatch(DEVICE_ID, batch);
+    }
+
+    @Benchmark
+    public String errorMessage() {
+        return LicenseJson.errorMessage(errorBody);
+    }
+
+    @Benchmark
+    public long nextHeartbeatHint() {
+        return LicenseJson.readLong(batchResponse, "nextHeartbeatSeconds", -1);
+    }
+
+    @Benchmark
+    public Map<String, String> decodeBatchFailures() {
+        return LicenseJson.decodeBatchFailures(batchResponse);
+    }
+}
@@ -0,0 +1,84 @@
+package com.hsf;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LicenseWebSocketClient.onMessage: giải mã frame (JSON text hoặc {@link PushBinaryCodec}), lọc seq,
+ * đếm metric và giao cho Listener. Client không kết nối; frame không có seq để lần gọi nào cũng đi
+ * hết đường dispatch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlicense.log.level=OFF")
+public class PushDispatchBenchmark {
+
+    @Param({ "HEARTBEAT_ACK", "LOCK" })
+    private String type;
+
+    private String frame;
+    private ByteBuffer binaryFrame;
+    private LicenseWebSocketClient client;
+    private volatile PushMessage delivered;
+
+    @Setup
+    public void setUp() {
+        frame = "LOCK".equals(type)
+                ? "{\"type\":\"LOCK\",\"licenseKey\":\"ABCD-EFGH-IJKL-MNOP\",\"reason\":\"License đã bị vô hiệu hóa bởi quản trị viên\"}"
+                : "{\"type\":\"HEARTBEAT_ACK\"}";
+        binaryFrame = PushBinaryCodec.encode(LicenseJson.decodePush(frame));
+        client = LicenseWebSocketClient.create("ws://127.0.0.1:9", () -> List.of("ABCD-EFGH-IJKL-MNOP"), "0A1B2C3D4E5F",
+                new LicenseWebSocketClient.Listener() {
+                    @Override
+                    public void onChannelOpen() {
+                    }
+
+                    @Override
+                    public void onChannelClosed() {
+                    }
+
+                    @Override
+                    public void onPush(PushMessage message) {
+                        delivered = message;
+                    }
+                });
+    }
+
+    @Benchmark
+    public PushMessage decode() {
+        return LicenseJson.decodePush(frame);
+    }
+
+    @Benchmark
+    public PushMessage onMessage() {
+        client.onMessage(frame);
+        return delivered;
+    }
+
+    @Benchmark
+    public PushMessage decodeBinary() {
+        return PushBinaryCodec.decode(binaryFrame);
+    }
+
+    @Benchmark
+    public PushMessage onMessageBinary() {
+        client.onMessage(binaryFrame);
+        return delivered;
+    }
+}
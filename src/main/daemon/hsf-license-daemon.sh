@@ -0,0 +1,10 @@
+#!/bin/sh
+# Chạy license không giao diện: ./hsf-license-daemon.sh KEY1 [KEY2...]
+# System properties (-Dlicense.*) truyền qua biến HSF_LICENSE_OPTS. Exit code: 0 dừng bình thường,
+# 2 cấu hình sai, 3 license bị khóa, 4 server từ chối kích hoạt.
+DIR="$(cd "$(dirname "$0")" && pwd)"
+exec "$DIR/runtime/bin/java" \
+    -Xms8m -Xmx32m -Xss256k -XX:+UseSerialGC -XX:TieredStopAtLevel=1 \
+    -XX:MaxMetaspaceSize=48m -XX:ReservedCodeCacheSize=16m \
+    $HSF_LICENSE_OPTS \
+    -cp "$DIR/lib/*" com.hsf.LicenseDaemon "$@"
@@ -0,0 +1,9 @@
+@echo off
+rem Khởi động bằng runtime rút gọn (runtime\) và archive CDS của ứng dụng.
+rem Lần chạy đầu JVM tự tạo archive khi thoát (%USERPROFILE%\.hsf-license\app.jsa), các lần sau nạp class từ archive.
+set "DIR=%~dp0"
+if "%HSF_LICENSE_CDS%"=="" set "HSF_LICENSE_CDS=%USERPROFILE%\.hsf-license\app.jsa"
+for %%F in ("%HSF_LICENSE_CDS%") do if not exist "%%~dpF" mkdir "%%~dpF"
+"%DIR%runtime\bin\java" -XX:SharedArchiveFile="%HSF_LICENSE_CDS%" -XX:+AutoCreateSharedArchive ^
+    --module-path "%DIR%lib" --add-modules org.slf4j ^
+    -m com.hsf/com.hsf.LicenseClient %*
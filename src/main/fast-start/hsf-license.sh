@@ -0,0 +1,10 @@
+#!/bin/sh
+# Khởi động bằng runtime rút gọn (runtime/) và archive CDS của ứng dụng.
+# Lần chạy đầu JVM tự tạo archive khi thoát (~/.hsf-license/app.jsa), các lần sau nạp class từ archive.
+DIR="$(cd "$(dirname "$0")" && pwd)"
+CDS_ARCHIVE="${HSF_LICENSE_CDS:-$HOME/.hsf-license/app.jsa}"
+mkdir -p "$(dirname "$CDS_ARCHIVE")"
+exec "$DIR/runtime/bin/java" \
+    -XX:SharedArchiveFile="$CDS_ARCHIVE" -XX:+AutoCreateSharedArchive \
+    --module-path "$DIR/lib" --add-modules org.slf4j \
+    -m com.hsf/com.hsf.LicenseClient "$@"
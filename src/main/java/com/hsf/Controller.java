@@ -1,212 +1,316 @@
 package com.hsf;
 
 import java.net.ConnectException;
-import java.net.InetAddress;
-import java.net.NetworkInterface;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.HashMap;
-import java.util.Map;
-
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 
 public class Controller {
-    private static final String SERVER_URL = "http://localhost:8080/api/license";
-    private static final String PRODUCT_NAME = "Product 2";
+
+    private static final Log LOG = Log.get(Controller.class);
+    // Sản phẩm gửi kèm khi kích hoạt (-Dlicense.product)
+    private static final String PRODUCT_NAME = System.getProperty("license.product", "Product 2");
+    private static final Duration REVALIDATE_PERIOD = Duration.ofSeconds(10);
+    private static final Duration REVALIDATE_MAX_BACKOFF = Duration.ofMinutes(5);
     
     @FXML
     private TextField textField;
 
+    @FXML
+    private Button button;
+
+    @FXML
+    private Button cancelButton;
+
+    @FXML
+    private ProgressIndicator progressIndicator;
+
+    @FXML
+    private Label progressLabel;
+
+    private CompletableFuture<HttpResponse<String>> pendingActivation;  // chỉ truy cập trên luồng JavaFX
+    private volatile CompletableFuture<HttpResponse<String>> pendingHttpRequest;
+
     private String license = "";
-    private Thread heartbeatThread;  // Lưu reference toàn cục
-    private volatile boolean isRunning = false;  // Flag để dừng thread an toàn
-    private LicenseWebSocketClient wsClient;  // WebSocket client
+    private final HeartbeatBackoff revalidateBackoff = new HeartbeatBackoff(REVALIDATE_PERIOD, REVALIDATE_MAX_BACKOFF);
+    private volatile MainController mainController;
+    private final List<PushEventBus.Subscription> pushSubscriptions = new CopyOnWriteArrayList<>();
 
-    public static String getDeviceId() throws Exception {
-        InetAddress localHost = InetAddress.getLocalHost();
-        NetworkInterface ni = NetworkInterface.getByInetAddress(localHost);
-        byte[] mac = ni.getHardwareAddress();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : mac) sb.append(String.format("%02X", b));
-        return sb.toString();
+    public static String getDeviceId() {
+        return DeviceIdentity.get();
     }
 
     @FXML
-    public void activate(ActionEvent event) throws Exception {
+    public void activate(ActionEvent event) {
+        if (pendingActivation != null) {
+            return;  // Đang có một lần kích hoạt chạy
+        }
+        long clickedAt = System.nanoTime();
         license = textField.getText();
+        setBusy(true, "Đang kích hoạt...");
 
-        String deviceId = getDeviceId();
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("licenseKey", license);
-        requestBody.put("deviceId", deviceId);
-        requestBody.put("productName", PRODUCT_NAME);
-        Gson gson = new Gson();
-        String jsonBody = gson.toJson(requestBody);
-        try {
-            String url = SERVER_URL + "/activate";
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                    .build();
-            HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 200) {
-                System.out.println("Kích hoạt thành công");
-
-                // Start heartbeat thread chỉ nếu chưa chạy
-                if (heartbeatThread == null || !heartbeatThread.isAlive()) {
-                    isRunning = true;
-                    heartbeatThread = new Thread(() -> {
-                        try {
-                            while (isRunning) {
-                                heartbeat();
-                                System.out.println("Heartbeat sent");
-                                Thread.sleep(10000); // 10 seconds
-                            }
-                        } catch (InterruptedException e) {
-                            System.out.println("Heartbeat thread interrupted");
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    });
-                    heartbeatThread.setDaemon(true);
-                    heartbeatThread.start();
-                }
-                
-                // Navigate to main screen
-                FXMLLoader loader = new FXMLLoader(getClass().getResource("main.fxml"));
-                Parent root = loader.load();
-                MainController mainController = loader.getController();
-                mainController.initialize(license, deviceId, this);
-                
-                Stage stage = (Stage) textField.getScene().getWindow();
-                stage.setScene(new Scene(root, 600, 400));
-                stage.setTitle("Ứng dụng đã kích hoạt");
-                
-                // Start WebSocket connection in background thread after navigation
-                new Thread(() -> {
-                    try {
-                        System.out.println("=== Starting WebSocket connection ===");
-                        wsClient = new LicenseWebSocketClient("ws://localhost:8080", license, deviceId, this);
-                        System.out.println("WebSocket client created");
-                        wsClient.setMainController(mainController);
-                        System.out.println("MainController set in WebSocket client");
-                        wsClient.connectBlocking(); // Chờ kết nối hoàn tất
-                        System.out.println("WebSocket connected successfully");
-                    } catch (Exception e) {
-                        System.err.println("Failed to connect WebSocket: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                }).start();
-
+        // Không gọi mạng hay tính device id trên luồng JavaFX
+        CompletableFuture<HttpResponse<String>> request = CompletableFuture
+                .supplyAsync(Controller::getDeviceId, LicenseScheduler.shared()::execute)
+                .thenCompose(deviceId -> {
+                    pendingHttpRequest = LicenseTransport.shared().activateAsync(license, deviceId, PRODUCT_NAME);
+                    return pendingHttpRequest;
+                });
+        pendingActivation = request;
+        request.whenComplete((response, error) -> Platform.runLater(() -> {
+            if (pendingActivation != request) {
+                return;
+            }
+            pendingActivation = null;
+            pendingHttpRequest = null;
+            setBusy(false, "");
+            if (request.isCancelled()) {
+                LOG.event(Log.Level.INFO, "activate_cancelled", "license", license);
+            } else if (error != null) {
+                onActivationError(unwrap(error));
             } else {
-                String errorMsg = getErrorMessageFromResponse(response.body());
-                System.out.println("Kích hoạt thất bại: " + errorMsg);
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Kích hoạt thất bại");
-                alert.setContentText("Kích hoạt li-xăng thất bại: " + errorMsg);
-                alert.showAndWait();
+                onActivationResponse(response, clickedAt);
             }
-        } catch (ConnectException e) {
-            System.out.println("Không thể kết nối đến máy chủ: " + e.getMessage());
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Lỗi kết nối");
-            alert.setContentText("Không thể kết nối đến máy chủ: " + e.getMessage());
-            alert.showAndWait();
-        }
+        }));
     }
 
     @FXML
-    public void deactivate() throws Exception {
-        String deviceId = getDeviceId();
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("licenseKey", license);
-        requestBody.put("deviceId", deviceId);
-        Gson gson = new Gson();
-        String jsonBody = gson.toJson(requestBody);
-        String url = SERVER_URL + "/deactivate";
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                .build();
-        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
-        if (response.statusCode() == 200) {
-            System.out.println("Hủy kích hoạt thành công");
-            // Stop heartbeat thread
-            isRunning = false;
-            if (heartbeatThread != null && heartbeatThread.isAlive()) {
-                heartbeatThread.interrupt();
+    public void cancelActivation(ActionEvent event) {
+        CompletableFuture<HttpResponse<String>> request = pendingActivation;
+        if (request != null) {
+            request.cancel(true);
+            // Hủy cả request HTTP bên dưới để giải phóng kết nối ngay
+            CompletableFuture<HttpResponse<String>> http = pendingHttpRequest;
+            if (http != null) {
+                http.cancel(true);
             }
-            // Close WebSocket connection
-            if (wsClient != null) {
-                wsClient.close();
-                wsClient = null;
+        }
+    }
+
+    private void onActivationResponse(HttpResponse<String> response, long clickedAt) {
+        if (response.statusCode() == 200) {
+            LOG.event(Log.Level.INFO, "activate_ok", "license", license);
+            String activated = license;
+            String body = response.body();
+            LicenseScheduler.shared().execute(() -> {
+                LicenseTokenCache.save(activated, PRODUCT_NAME, body);
+                registerWithManager(activated);
+            });
+
+            // Navigate to main screen
+            try {
+                openMainScreen((Stage) textField.getScene().getWindow());
+            } catch (Exception e) {
+                LOG.error("Cannot open main screen", e);
+                return;
             }
+
+            // Thời gian từ lúc bấm nút tới khi main.fxml hiển thị
+            LicenseMetrics.shared().histogram("license_activation_seconds", "mode", "online").recordSince(clickedAt);
         } else {
             String errorMsg = getErrorMessageFromResponse(response.body());
-            System.out.println("Hủy kích hoạt thất bại: " + errorMsg);
+            LOG.event(Log.Level.WARN, "activate_failed", "status", response.statusCode(), "message", errorMsg);
             Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Hủy kích hoạt thất bại");
-            alert.setContentText("Hủy kích hoạt li-xăng thất bại: " + errorMsg);
+            alert.setTitle("Kích hoạt thất bại");
+            alert.setContentText("Kích hoạt li-xăng thất bại: " + errorMsg);
             alert.showAndWait();
         }
     }
 
-    public void heartbeat() throws Exception {
-        String deviceId = getDeviceId();
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("licenseKey", license);
-        requestBody.put("deviceId", deviceId);
-        Gson gson = new Gson();
-        String jsonBody = gson.toJson(requestBody);
-        String url = SERVER_URL + "/heartbeat";  // Sửa: Thêm /api/license nếu cần
-        
-        System.out.println("Sending heartbeat to: " + url);
-        
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create(url))
-            .header("Content-Type", "application/json")
-            .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-            .build();
-        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
-        
-        if (response.statusCode() != 200) {
-            String errorMsg = getErrorMessageFromResponse(response.body());
-            System.out.println("Heartbeat thất bại: " + errorMsg);
+    private void onActivationError(Throwable error) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        if (error instanceof ConnectException || error instanceof HttpTimeoutException) {
+            LOG.warn("Không thể kết nối đến máy chủ", error);
+            alert.setTitle("Lỗi kết nối");
+            alert.setContentText("Không thể kết nối đến máy chủ: " + error.getMessage());
+        } else {
+            LOG.error("Activation failed", error);
+            alert.setTitle("Kích hoạt thất bại");
+            alert.setContentText("Kích hoạt li-xăng thất bại: " + error);
         }
+        alert.showAndWait();
     }
 
-    private String getErrorMessageFromResponse(String responseBody) {
-        Gson gson = new Gson();
+    private void setBusy(boolean busy, String message) {
+        button.setDisable(busy);
+        textField.setDisable(busy);
+        cancelButton.setVisible(busy);
+        cancelButton.setManaged(busy);
+        progressIndicator.setVisible(busy);
+        progressIndicator.setManaged(busy);
+        progressLabel.setText(message);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Khởi động từ token offline: vào thẳng màn hình chính rồi xác thực lại với server trong nền.
+     */
+    public void resume(Stage stage, LicenseTokenCache.CachedToken token) throws Exception {
+        long started = System.nanoTime();
+        license = token.licenseKey();
+        openMainScreen(stage);
+        LicenseMetrics.shared().histogram("license_activation_seconds", "mode", "offline").recordSince(started);
+        LicenseScheduler.shared().execute(this::revalidate);
+    }
+
+    private void revalidate() {
         try {
-            JsonObject json = gson.fromJson(responseBody, JsonObject.class);
-            if (json.has("message")) {
-                return json.get("message").getAsString();
+            HttpResponse<String> response = LicenseTransport.shared().activate(license, getDeviceId(), PRODUCT_NAME);
+            if (response.statusCode() == 200) {
+                LOG.event(Log.Level.INFO, "revalidate_ok", "license", license);
+                LicenseTokenCache.save(license, PRODUCT_NAME, response.body());
+                registerWithManager(license);
+                return;
+            }
+            if (!HeartbeatBackoff.isTransient(response.statusCode())) {
+                // Server từ chối license (401, 403, 404, 410...): bỏ token và quay về màn hình kích hoạt
+                LicenseTokenCache.clear();
+                rejectOfflineSession(getErrorMessageFromResponse(response.body()));
+                return;
             }
-        } catch (Exception ex) {
-            // fallback
+            revalidateBackoff.onFailure(HeartbeatBackoff.retryAfter(response));
+            LOG.event(Log.Level.WARN, "revalidate_retry", "status", response.statusCode(),
+                    "failures", revalidateBackoff.getConsecutiveFailures());
+        } catch (InterruptedException e) {
+            return;
+        } catch (Exception e) {
+            revalidateBackoff.onFailure(null);
+            LOG.warn("Chưa xác thực lại được, dùng token offline", e);
         }
-        return responseBody;
+        if (LicenseTokenCache.loadValid() == null) {
+            rejectOfflineSession("Hết thời gian sử dụng offline, cần kết nối máy chủ để kích hoạt lại");
+            return;
+        }
+        LicenseScheduler.shared().schedule(this::revalidate, revalidateBackoff.nextDelay());
     }
-    
-    public void stopHeartbeat() {
-        isRunning = false;
-        if (heartbeatThread != null && heartbeatThread.isAlive()) {
-            heartbeatThread.interrupt();
+
+    /** Heartbeat và WebSocket dùng chung cho mọi license của tiến trình; UNLOCK/QUOTA hiển thị ở màn hình chính. */
+    private void registerWithManager(String licenseKey) {
+        LicenseManager manager = LicenseManager.shared();
+        manager.register(licenseKey, PRODUCT_NAME, this::onLocked);
+        if (pushSubscriptions.isEmpty()) {
+            pushSubscriptions.add(manager.subscribe(PushEventBus.UNLOCK, this::onLicensePush));
+            pushSubscriptions.add(manager.subscribe(PushEventBus.QUOTA, this::onLicensePush));
+        }
+    }
+
+    /** Chạy trên luồng worker của PushEventBus; MainController tự gộp cập nhật lên luồng JavaFX. */
+    private void onLicensePush(PushMessage message) {
+        MainController main = mainController;
+        if (main == null || (message.licenseKey() != null && !message.licenseKey().equals(license))) {
+            return;
+        }
+        if (PushEventBus.UNLOCK.equals(message.type())) {
+            main.showUnlocked();
+        } else {
+            main.showQuota(message);
         }
-        System.out.println("Heartbeat stopped due to license lock");
     }
-}
\ No newline at end of file
+
+    private void cancelPushSubscriptions() {
+        pushSubscriptions.forEach(PushEventBus.Subscription::cancel);
+        pushSubscriptions.clear();
+    }
+
+    private void rejectOfflineSession(String reason) {
+        cancelPushSubscriptions();
+        Platform.runLater(() -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Kích hoạt thất bại");
+            alert.setContentText("Kích hoạt li-xăng thất bại: " + reason);
+            alert.showAndWait();
+            if (mainController != null) {
+                mainController.showActivationScreen();
+            }
+        });
+    }
+
+    private void openMainScreen(Stage stage) throws Exception {
+        SceneCache.Loaded main = SceneCache.take("main");
+        mainController = main.getController();
+        mainController.initialize(license, getDeviceId(), this);
+
+        stage.setScene(new Scene(main.root(), 600, 400));
+        stage.setTitle("Ứng dụng đã kích hoạt");
+    }
+
+    /** Server khóa license (LOCK qua WebSocket); gọi từ luồng của socket. */
+    private void onLocked(String licenseKey, String reason) {
+        MainController main = mainController;
+        if (main != null) {
+            main.showLockAlert(reason);
+            return;
+        }
+        Platform.runLater(() -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("License bị thu hồi");
+            alert.setHeaderText("License của bạn đã bị thu hồi!");
+            alert.setContentText(reason);
+            alert.showAndWait();
+            System.exit(0);
+        });
+    }
+
+    /**
+     * Hủy kích hoạt không chặn luồng gọi. Future trả về true nếu server chấp nhận;
+     * lỗi được báo bằng Alert trên luồng JavaFX.
+     */
+    public CompletableFuture<Boolean> deactivateAsync() {
+        return CompletableFuture
+                .supplyAsync(LicenseManager::shared, LicenseScheduler.shared()::execute)
+                .thenCompose(manager -> manager.deactivateAsync(license))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        Throwable cause = unwrap(error);
+                        LOG.warn("Deactivate failed", cause);
+                        showDeactivateError(cause.toString());
+                        return false;
+                    }
+                    if (response.statusCode() != 200) {
+                        String errorMsg = getErrorMessageFromResponse(response.body());
+                        LOG.event(Log.Level.WARN, "deactivate_failed", "status", response.statusCode(), "message", errorMsg);
+                        showDeactivateError(errorMsg);
+                        return false;
+                    }
+                    LOG.event(Log.Level.INFO, "deactivate_ok", "license", license);
+                    // LicenseManager đã gỡ license khỏi heartbeat và WebSocket
+                    LicenseTokenCache.clear(license);
+                    cancelPushSubscriptions();
+                    return true;
+                });
+    }
+
+    private void showDeactivateError(String errorMsg) {
+        Platform.runLater(() -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Hủy kích hoạt thất bại");
+            alert.setContentText("Hủy kích hoạt li-xăng thất bại: " + errorMsg);
+            alert.showAndWait();
+        });
+    }
+
+    private String getErrorMessageFromResponse(String responseBody) {
+        return LicenseJson.errorMessage(responseBody);
+    }
+}
@@ -0,0 +1,160 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Định danh thiết bị, tính một lần mỗi tiến trình rồi giữ trong bộ nhớ. Thứ tự: MAC của interface ứng với
+ * hostname → MAC của interface vật lý đang bật đầu tiên theo tên → hash của hostname/user/OS. File device-id
+ * trong LicensePaths là cache để khởi động không phải tra hostname: giá trị trong file được dùng ngay, rồi
+ * được so với giá trị tính từ phần cứng ở nền; khác thì ghi đè để lần chạy sau dùng định danh đúng (file chép
+ * sang máy khác hoặc sửa tay chỉ có tác dụng tới hết tiến trình hiện tại).
+ */
+public final class DeviceIdentity {
+
+    private static final Log LOG = Log.get(DeviceIdentity.class);
+
+    private static final String CACHE_FILE = "device-id";
+
+    private static volatile String cached;
+
+    private DeviceIdentity() {
+    }
+
+    public static String get() {
+        String result = cached;
+        if (result == null) {
+            synchronized (DeviceIdentity.class) {
+                result = cached;
+                if (result == null) {
+                    result = load();
+                    cached = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String load() {
+        Path file = LicensePaths.resolve(CACHE_FILE);
+        try {
+            if (Files.isRegularFile(file)) {
+                String stored = Files.readString(file, StandardCharsets.UTF_8).trim();
+                if (!stored.isEmpty()) {
+                    // Không chờ getLocalHost (tra DNS) lúc khởi động: kiểm tra lại với phần cứng ở nền
+                    Thread.ofVirtual().name("device-id-check").start(() -> revalidate(file, stored));
+                    return stored;
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot read device id cache", e);
+        }
+
+        String computed = compute();
+        store(file, computed);
+        return computed;
+    }
+
+    /** File không khớp phần cứng (chép từ máy khác, sửa tay): ghi lại giá trị đúng, có hiệu lực từ lần chạy sau. */
+    private static void revalidate(Path file, String stored) {
+        String computed = compute();
+        if (!computed.equals(stored)) {
+            LOG.event(Log.Level.WARN, "device_id_mismatch", "cached", stored, "computed", computed);
+            store(file, computed);
+        }
+    }
+
+    private static void store(Path file, String deviceId) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), CACHE_FILE, ".tmp");
+            Files.writeString(tmp, deviceId, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Cannot write device id cache", e);
+        }
+    }
+
+    static String compute() {
+        try {
+            // Giữ cách tính cũ để device id không đổi với máy đã kích hoạt
+            NetworkInterface ni = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
+            if (ni != null && isUsableMac(ni.getHardwareAddress())) {
+                return toHex(ni.getHardwareAddress());
+            }
+        } catch (Exception e) {
+            // hostname không phân giải được: thử duyệt interface
+        }
+
+        try {
+            List<NetworkInterface> interfaces = new ArrayList<>(Collections.list(NetworkInterface.getNetworkInterfaces()));
+            interfaces.sort(Comparator.comparing(NetworkInterface::getName));
+            for (NetworkInterface ni : interfaces) {
+                if (!isPhysical(ni)) {
+                    continue;
+                }
+                byte[] mac = ni.getHardwareAddress();
+                if (isUsableMac(mac)) {
+                    return toHex(mac);
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Cannot enumerate network interfaces", e);
+        }
+
+        return fallbackFingerprint();
+    }
+
+    // Bridge, veth và interface của docker/libvirt có MAC ngẫu nhiên hoặc đổi theo container
+    private static boolean isPhysical(NetworkInterface ni) throws SocketException {
+        String name = ni.getName();
+        return ni.isUp() && !ni.isLoopback() && !ni.isVirtual() && !ni.isPointToPoint()
+                && !name.startsWith("br") && !name.startsWith("veth") && !name.startsWith("docker")
+                && !name.startsWith("virbr");
+    }
+
+    private static boolean isUsableMac(byte[] mac) {
+        if (mac == null || mac.length != 6) {
+            return false;
+        }
+        for (byte b : mac) {
+            if (b != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String fallbackFingerprint() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = System.getenv().getOrDefault("COMPUTERNAME", System.getenv().getOrDefault("HOSTNAME", ""));
+        }
+        String seed = host + "|" + System.getProperty("user.name") + "|" + System.getProperty("os.name");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(seed.getBytes(StandardCharsets.UTF_8));
+            return toHex(Arrays.copyOf(digest, 6));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        return HexFormat.of().withUpperCase().formatHex(bytes);
+    }
+}
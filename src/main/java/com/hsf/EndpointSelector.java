@@ -0,0 +1,184 @@
+package com.hsf;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Chọn server license trong danh sách endpoint (nhiều vùng) theo độ trễ và tình trạng lỗi. Mỗi endpoint
+ * giữ độ trễ trung bình trượt (EWMA) của các request thành công; endpoint lỗi liên tiếp
+ * license.endpoint.failureThreshold lần (3) bị ngắt mạch trong license.endpoint.openSeconds (30). Hết thời
+ * gian ngắt, một request duy nhất được gửi thử tới endpoint đó (kèm endpoint khỏe làm dự phòng): thành công
+ * thì mở lại, lỗi thì ngắt tiếp. Endpoint chưa đo được xếp trước để mọi vùng đều được đo ít nhất một lần.
+ */
+public final class EndpointSelector {
+
+    private static final Log LOG = Log.get(EndpointSelector.class);
+
+    private static final double EWMA_ALPHA = 0.3;
+    // Endpoint đang dùng chỉ bị thay khi endpoint khác nhanh hơn quá tỉ lệ này (giữ kết nối keep-alive)
+    private static final double SWITCH_RATIO = 1.2;
+    private static final int FAILURE_THRESHOLD = Integer.getInteger("license.endpoint.failureThreshold", 3);
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(Long.getLong("license.endpoint.openSeconds", 30));
+
+    /** Một server trong danh sách; trạng thái chỉ đổi khi giữ khóa của selector. */
+    public static final class Endpoint {
+        private final String url;
+        private double latencyNanos = Double.NaN;
+        private int consecutiveFailures;
+        private long openUntilNanos;
+
+        private Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String url() {
+            return url;
+        }
+
+        private boolean isTripped() {
+            return consecutiveFailures >= FAILURE_THRESHOLD;
+        }
+
+        private double rank() {
+            return Double.isNaN(latencyNanos) ? 0 : latencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final Duration openDuration;
+    private Endpoint preferred;
+
+    public EndpointSelector(List<String> urls) {
+        this(urls, OPEN_DURATION);
+    }
+
+    EndpointSelector(List<String> urls, Duration openDuration) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        List<Endpoint> created = new ArrayList<>();
+        for (String url : urls) {
+            URI.create(url);  // URL sai báo lỗi ngay khi cấu hình, không phải giữa lúc chuyển endpoint
+            created.add(new Endpoint(url));
+        }
+        this.endpoints = List.copyOf(created);
+        this.openDuration = openDuration;
+        this.preferred = endpoints.get(0);
+    }
+
+    public static EndpointSelector of(String... urls) {
+        return new EndpointSelector(List.of(urls));
+    }
+
+    /**
+     * Danh sách từ listProperty (các URL cách nhau bằng dấu phẩy, ví dụ license.servers); không có thì
+     * dùng một URL từ urlProperty (license.server.url) hoặc defaultUrl. Đăng ký gauge cho từng endpoint.
+     */
+    public static EndpointSelector fromSystemProperties(String listProperty, String urlProperty, String defaultUrl) {
+        List<String> urls = new ArrayList<>();
+        for (String url : System.getProperty(listProperty, "").split(",")) {
+            if (!url.isBlank()) {
+                urls.add(url.strip());
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(System.getProperty(urlProperty, defaultUrl));
+        }
+        EndpointSelector selector = new EndpointSelector(urls);
+        LicenseMetrics metrics = LicenseMetrics.shared();
+        for (Endpoint endpoint : selector.endpoints) {
+            metrics.gauge("license_endpoint_latency_seconds", () -> selector.latencySeconds(endpoint),
+                    "endpoint", endpoint.url());
+            metrics.gauge("license_endpoint_circuit_open", () -> selector.isOpen(endpoint) ? 1 : 0,
+                    "endpoint", endpoint.url());
+        }
+        return selector;
+    }
+
+    /** Endpoint nên dùng cho request kế tiếp. */
+    public Endpoint pick() {
+        return candidates(1).get(0);
+    }
+
+    /**
+     * Tối đa max endpoint theo thứ tự nên thử: endpoint vừa hết thời gian ngắt (lượt thử duy nhất),
+     * các endpoint khỏe theo độ trễ, cuối cùng là endpoint đang bị ngắt (khi mọi endpoint đều lỗi vẫn
+     * thử thay vì bỏ request).
+     */
+    public synchronized List<Endpoint> candidates(int max) {
+        long now = System.nanoTime();
+        List<Endpoint> ordered = new ArrayList<>(endpoints.size());
+        List<Endpoint> healthy = new ArrayList<>();
+        List<Endpoint> open = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isTripped()) {
+                healthy.add(endpoint);
+            } else if (now - endpoint.openUntilNanos >= 0 && ordered.isEmpty()) {
+                // Lượt thử: gia hạn ngắt ngay để các request khác không cùng dồn vào endpoint này
+                endpoint.openUntilNanos = now + openDuration.toNanos();
+                ordered.add(endpoint);
+            } else {
+                open.add(endpoint);
+            }
+        }
+        Endpoint current = preferred;
+        healthy.sort(Comparator.comparingDouble(endpoint ->
+                endpoint == current ? endpoint.rank() / SWITCH_RATIO : endpoint.rank()));
+        ordered.addAll(healthy);
+        open.sort(Comparator.comparingLong(endpoint -> endpoint.openUntilNanos - now));
+        ordered.addAll(open);
+        return List.copyOf(ordered.subList(0, Math.min(max, ordered.size())));
+    }
+
+    public synchronized void onSuccess(Endpoint endpoint, long elapsedNanos) {
+        endpoint.latencyNanos = Double.isNaN(endpoint.latencyNanos) ? elapsedNanos
+                : EWMA_ALPHA * elapsedNanos + (1 - EWMA_ALPHA) * endpoint.latencyNanos;
+        if (endpoint.isTripped()) {
+            LOG.event(Log.Level.INFO, "endpoint_recovered", "endpoint", endpoint.url());
+        }
+        endpoint.consecutiveFailures = 0;
+        preferred = endpoint;
+    }
+
+    public synchronized void onFailure(Endpoint endpoint) {
+        endpoint.consecutiveFailures++;
+        if (endpoint.consecutiveFailures == FAILURE_THRESHOLD) {
+            endpoint.openUntilNanos = System.nanoTime() + openDuration.toNanos();
+            LicenseMetrics.shared().counter("license_endpoint_circuit_opened_total", "endpoint", endpoint.url()).increment();
+            LOG.event(Log.Level.WARN, "endpoint_circuit_open", "endpoint", endpoint.url(),
+                    "failures", endpoint.consecutiveFailures, "openSeconds", openDuration.toSeconds());
+        } else if (endpoint.isTripped()) {
+            // Lượt thử sau thời gian ngắt cũng lỗi: ngắt thêm một chu kỳ
+            endpoint.openUntilNanos = System.nanoTime() + openDuration.toNanos();
+        }
+    }
+
+    /** Endpoint thành công gần nhất (không tính là lượt thử của endpoint đang bị ngắt). */
+    public synchronized Endpoint getPreferred() {
+        return preferred;
+    }
+
+    public int size() {
+        return endpoints.size();
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    private synchronized double latencySeconds(Endpoint endpoint) {
+        return Double.isNaN(endpoint.latencyNanos) ? 0 : endpoint.latencyNanos / 1e9;
+    }
+
+    private synchronized boolean isOpen(Endpoint endpoint) {
+        return endpoint.isTripped() && System.nanoTime() - endpoint.openUntilNanos < 0;
+    }
+}
@@ -0,0 +1,341 @@
+package com.hsf;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Giả lập một đội thiết bị không dùng JavaFX để đo tải license server. Mỗi thiết bị ảo có device id
+ * riêng và một {@link LicenseManager} thật (kích hoạt, heartbeat, WebSocket, reconnect). Kích hoạt,
+ * heartbeat và reconnect chạy trên virtual thread của {@link LicenseScheduler}, nhưng client Java-WebSocket
+ * của mỗi thiết bị tự tạo luồng đọc/ghi riêng là platform thread, nên N thiết bị dùng khoảng 2N luồng hệ
+ * điều hành (cần nâng {@code ulimit -u} khi N lớn). Vì vậy số thiết bị dùng WebSocket bị giới hạn bởi
+ * maxDevices; với wsUrl=none không có giới hạn này.
+ * Chạy: mvn compile exec:java -Dexec.mainClass="com.hsf.FleetSimulator" -Dlicense.sim.devices=1000
+ *
+ * Cấu hình qua system properties (license.sim.*): devices (100), licensesPerDevice (1),
+ * rampUpSeconds (10), durationSeconds (60), heartbeatSeconds (10), churnPerMinute (0, tỉ lệ thiết bị
+ * hủy rồi kích hoạt lại mỗi phút, ví dụ 0.05), reportSeconds (10), serverUrl, wsUrl ("none" để chỉ
+ * dùng HTTP), maxDevices (2000, số thiết bị WebSocket tối đa), product, keyPrefix (SIM-), deactivateOnExit
+ * (true), maxErrorRate (tỉ lệ lỗi HTTP tối đa, vượt quá thì thoát với mã 1), embeddedStub (chạy {@link StubLicenseServer} trong cùng tiến trình trên
+ * cổng trống và đo độ trễ lan truyền LOCK; cấu hình stub qua license.stub.*).
+ */
+public final class FleetSimulator {
+
+    private static final Log LOG = Log.get(FleetSimulator.class);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration CHURN_TICK = Duration.ofSeconds(1);
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    record Config(int devices, int licensesPerDevice, Duration rampUp, Duration duration,
+                  Duration heartbeatPeriod, double churnPerMinute, Duration reportInterval,
+                  String serverUrl, String wsUrl, String product, String keyPrefix,
+                  boolean deactivateOnExit, double maxErrorRate) {
+
+        static Config fromSystemProperties() {
+            String wsUrl = System.getProperty("license.sim.wsUrl",
+                    System.getProperty("license.ws.url", LicenseManager.DEFAULT_WS_URL));
+            int devices = Integer.getInteger("license.sim.devices", 100);
+            int maxDevices = Integer.getInteger("license.sim.maxDevices", 2000);
+            if (!"none".equalsIgnoreCase(wsUrl) && devices > maxDevices) {
+                // Mỗi kết nối WebSocket giữ 2 platform thread; vượt ngưỡng dễ chạm giới hạn luồng của hệ điều hành
+                throw new IllegalArgumentException("license.sim.devices=" + devices + " vượt license.sim.maxDevices="
+                        + maxDevices + " (mỗi thiết bị WebSocket dùng ~2 luồng hệ điều hành)");
+            }
+            return new Config(
+                    devices,
+                    Integer.getInteger("license.sim.licensesPerDevice", 1),
+                    Duration.ofSeconds(Long.getLong("license.sim.rampUpSeconds", 10)),
+                    Duration.ofSeconds(Long.getLong("license.sim.durationSeconds", 60)),
+                    Duration.ofSeconds(Long.getLong("license.sim.heartbeatSeconds", 10)),
+                    Double.parseDouble(System.getProperty("license.sim.churnPerMinute", "0")),
+                    Duration.ofSeconds(Long.getLong("license.sim.reportSeconds", 10)),
+                    System.getProperty("license.sim.serverUrl",
+                            System.getProperty("license.server.url", LicenseTransport.DEFAULT_SERVER_URL)),
+                    "none".equalsIgnoreCase(wsUrl) ? null : wsUrl,
+                    System.getProperty("license.sim.product", "Product 2"),
+                    System.getProperty("license.sim.keyPrefix", "SIM-"),
+                    Boolean.parseBoolean(System.getProperty("license.sim.deactivateOnExit", "true")),
+                    Double.parseDouble(System.getProperty("license.sim.maxErrorRate", "1")));
+        }
+
+        Config withServer(String serverUrl, String wsUrl) {
+            return new Config(devices, licensesPerDevice, rampUp, duration, heartbeatPeriod, churnPerMinute,
+                    reportInterval, serverUrl, this.wsUrl == null ? null : wsUrl, product, keyPrefix,
+                    deactivateOnExit, maxErrorRate);
+        }
+    }
+
+    private final Config config;
+    private final StubLicenseServer stub;  // null khi chạy với server thật
+    private final LicenseTransport transport;
+    private final LicenseScheduler scheduler = LicenseScheduler.shared();
+    private final LicenseMetrics metrics = LicenseMetrics.shared();
+    private final List<VirtualDevice> fleet;
+    private double pendingChurn;  // phần lẻ số thiết bị cần churn, cộng dồn qua các tick
+    private long startedAt;
+
+    FleetSimulator(Config config, StubLicenseServer stub) {
+        this.config = config;
+        this.stub = stub;
+        HttpClient.Version version = HttpClient.Version.valueOf(
+                System.getProperty("license.http.version", HttpClient.Version.HTTP_1_1.name()));
+        this.transport = new LicenseTransport(config.serverUrl(), version, Executors.newVirtualThreadPerTaskExecutor(),
+                Duration.ofMillis(Long.getLong("license.http.connectTimeoutMs", 3000)),
+                Duration.ofMillis(Long.getLong("license.http.requestTimeoutMs", 5000)));
+        this.fleet = new ArrayList<>(config.devices());
+        for (int i = 0; i < config.devices(); i++) {
+            fleet.add(new VirtualDevice(i));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Giới hạn mặc định (2) dành cho một máy; cả đội thiết bị trong một tiến trình cần nhiều hơn
+        if (System.getProperty("license.ws.maxConcurrentReconnects") == null) {
+            System.setProperty("license.ws.maxConcurrentReconnects", "64");
+        }
+        MetricsExporter.startFromSystemProperties();
+        Config config = Config.fromSystemProperties();
+        StubLicenseServer stub = null;
+        if (Boolean.getBoolean("license.sim.embeddedStub")) {
+            stub = new StubLicenseServer(StubLicenseServer.Config.fromSystemProperties(0, 0)).start();
+            config = config.withServer(stub.getHttpUrl(), stub.getWsUrl());
+        }
+        int exitCode = new FleetSimulator(config, stub).run();
+        if (stub != null) {
+            stub.stop();
+        }
+        System.exit(exitCode);
+    }
+
+    /** Chạy hết thời lượng cấu hình, in báo cáo và trả về mã thoát (1 nếu vượt maxErrorRate). */
+    int run() throws InterruptedException {
+        System.out.println("=== Fleet simulator ===");
+        System.out.println(config);
+        startedAt = System.nanoTime();
+
+        // Rải đều thời điểm khởi động trong khoảng ramp-up
+        long rampMs = config.rampUp().toMillis();
+        for (VirtualDevice device : fleet) {
+            long delayMs = fleet.size() > 1 ? rampMs * device.index / (fleet.size() - 1) : 0;
+            scheduler.schedule(device::start, Duration.ofMillis(delayMs));
+        }
+        LicenseScheduler.Task reporter = scheduler.scheduleAtFixedRate(this::printProgress, config.reportInterval(), 0);
+        LicenseScheduler.Task churn = config.churnPerMinute() > 0
+                ? scheduler.scheduleAtFixedRate(this::churnTick, CHURN_TICK, 0) : null;
+
+        Thread.sleep(config.duration().toMillis());
+
+        reporter.cancel();
+        if (churn != null) {
+            churn.cancel();
+        }
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+        stopFleet();
+        return printSummary(elapsedSeconds);
+    }
+
+    private synchronized void churnTick() {
+        pendingChurn += config.churnPerMinute() * fleet.size() * CHURN_TICK.toMillis() / 60_000.0;
+        while (pendingChurn >= 1) {
+            pendingChurn -= 1;
+            VirtualDevice device = fleet.get(ThreadLocalRandom.current().nextInt(fleet.size()));
+            scheduler.execute(device::churn);
+        }
+    }
+
+    private void stopFleet() {
+        List<CompletableFuture<Void>> stopping = new ArrayList<>(fleet.size());
+        for (VirtualDevice device : fleet) {
+            stopping.add(device.stop());
+        }
+        try {
+            CompletableFuture.allOf(stopping.toArray(CompletableFuture[]::new))
+                    .get(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            LOG.warn("Not every device deactivated within " + STOP_TIMEOUT.toSeconds() + "s", e);
+        }
+        for (VirtualDevice device : fleet) {
+            device.manager.stop();
+        }
+    }
+
+    private void printProgress() {
+        int online = 0;
+        int connected = 0;
+        for (VirtualDevice device : fleet) {
+            if (!device.manager.getLicenseKeys().isEmpty()) {
+                online++;
+            }
+            if (device.manager.isPushChannelLive()) {
+                connected++;
+            }
+        }
+        long requests = sum(metrics.counterValues("license_http_requests_total"));
+        System.out.printf("t=%ds online=%d/%d ws=%d http=%d errors=%d reconnects=%d%n",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt), online, fleet.size(), connected,
+                requests, httpErrors(), wsEvent("reconnect"));
+    }
+
+    private int printSummary(double elapsedSeconds) {
+        System.out.println();
+        System.out.printf("=== Summary (%.1fs, %d devices x %d licenses) ===%n",
+                elapsedSeconds, fleet.size(), config.licensesPerDevice());
+
+        System.out.println("HTTP throughput:");
+        metrics.counterValues("license_http_requests_total").forEach((series, count) ->
+                System.out.printf("  %-70s %8d  %8.1f/s%n", series, count, count / elapsedSeconds));
+
+        System.out.println("Latency (ms):");
+        printLatency(metrics.histograms("license_http_latency_seconds"));
+        printLatency(metrics.histograms("license_sim_activation_seconds"));
+        printLatency(metrics.histograms("license_ws_dispatch_seconds"));
+        printLatency(metrics.histograms("license_sim_lock_propagation_seconds"));
+
+        System.out.println("Heartbeats:");
+        metrics.counterValues("license_heartbeats_total").forEach((series, count) ->
+                System.out.printf("  %-70s %8d  %8.1f/s%n", series, count, count / elapsedSeconds));
+
+        System.out.println("WebSocket:");
+        metrics.counterValues("license_ws_events_total").forEach((series, count) ->
+                System.out.printf("  %-70s %8d%n", series, count));
+        metrics.counterValues("license_ws_messages_total").forEach((series, count) ->
+                System.out.printf("  %-70s %8d%n", series, count));
+
+        System.out.println("Fleet:");
+        metrics.counterValues("license_sim_activations_total").forEach((series, count) ->
+                System.out.printf("  %-70s %8d%n", series, count));
+        System.out.printf("  %-70s %8d%n", "license_sim_churn_total", metrics.counter("license_sim_churn_total").get());
+        System.out.printf("  %-70s %8d%n", "license_sim_locks_total", metrics.counter("license_sim_locks_total").get());
+
+        long requests = sum(metrics.counterValues("license_http_requests_total"));
+        double errorRate = requests == 0 ? 0 : (double) httpErrors() / requests;
+        System.out.printf("HTTP error rate: %.4f (max %.4f)%n", errorRate, config.maxErrorRate());
+        return errorRate > config.maxErrorRate() ? 1 : 0;
+    }
+
+    private static void printLatency(Map<String, LicenseMetrics.Histogram> histograms) {
+        histograms.forEach((series, histogram) -> {
+            StringBuilder line = new StringBuilder(String.format("  %-50s n=%-8d", series, histogram.count()));
+            for (double q : QUANTILES) {
+                line.append(String.format(" p%s=%.1f", String.valueOf(q * 100).replaceAll("\\.0$", ""),
+                        histogram.percentileMicros(q) / 1000.0));
+            }
+            line.append(String.format(" max=%.1f", histogram.maxMicros() / 1000.0));
+            System.out.println(line);
+        });
+    }
+
+    private long httpErrors() {
+        long errors = 0;
+        for (Map.Entry<String, Long> entry : metrics.counterValues("license_http_requests_total").entrySet()) {
+            if (!entry.getKey().contains("status=\"200\"")) {
+                errors += entry.getValue();
+            }
+        }
+        return errors;
+    }
+
+    private long wsEvent(String event) {
+        return metrics.counter("license_ws_events_total", "event", event).get();
+    }
+
+    private static long sum(Map<String, Long> values) {
+        long total = 0;
+        for (long value : values.values()) {
+            total += value;
+        }
+        return total;
+    }
+
+    /** Một thiết bị ảo: device id và bộ license riêng, dùng LicenseManager thật. */
+    private final class VirtualDevice {
+        final int index;
+        final String deviceId;
+        final List<String> licenseKeys;
+        final LicenseManager manager;
+        // Không churn chồng lên một lần kích hoạt / churn đang chạy
+        private final AtomicBoolean busy = new AtomicBoolean();
+
+        VirtualDevice(int index) {
+            this.index = index;
+            this.deviceId = String.format("SIM%09X", index);
+            this.licenseKeys = new ArrayList<>(config.licensesPerDevice());
+            for (int i = 0; i < config.licensesPerDevice(); i++) {
+                licenseKeys.add(config.keyPrefix() + index + "-" + i);
+            }
+            this.manager = new LicenseManager(transport, scheduler, deviceId, config.wsUrl(), false,
+                    config.heartbeatPeriod()).start();
+        }
+
+        void start() {
+            if (!busy.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                activateAll();
+            } finally {
+                busy.set(false);
+            }
+        }
+
+        void churn() {
+            if (!busy.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                manager.deactivateAllAsync().get(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                metrics.counter("license_sim_churn_total").increment();
+                activateAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOG.event(Log.Level.WARN, "sim_churn_failed", "device", deviceId, "error", e.toString());
+            } finally {
+                busy.set(false);
+            }
+        }
+
+        private void activateAll() {
+            for (String licenseKey : licenseKeys) {
+                long started = System.nanoTime();
+                String result;
+                try {
+                    int status = transport.activate(licenseKey, deviceId, config.product()).statusCode();
+                    if (status == 200) {
+                        manager.register(licenseKey, config.product(), this::onLocked);
+                    }
+                    result = Integer.toString(status);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    result = e.getClass().getSimpleName();
+                }
+                metrics.histogram("license_sim_activation_seconds").recordSince(started);
+                metrics.counter("license_sim_activations_total", "result", result).increment();
+            }
+        }
+
+        private void onLocked(String licenseKey, String reason) {
+            metrics.counter("license_sim_locks_total").increment();
+            long sentAt = stub != null ? stub.lockSentNanos(licenseKey) : -1;
+            if (sentAt >= 0) {
+                // Từ lúc stub gửi LOCK tới khi listener của thiết bị được gọi
+                metrics.histogram("license_sim_lock_propagation_seconds").recordSince(sentAt);
+            }
+            LOG.event(Log.Level.INFO, "sim_locked", "device", deviceId, "license", licenseKey, "reason", reason);
+        }
+
+        CompletableFuture<Void> stop() {
+            return config.deactivateOnExit() ? manager.deactivateAllAsync() : CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.hsf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javafx.application.Platform;
+
+/**
+ * Gộp các cập nhật giao diện gọi từ luồng nền: mỗi khóa chỉ giữ cập nhật mới nhất và cả lô chạy trong
+ * một Platform.runLater. Khi lô trước chưa chạy thì không xếp thêm runLater nào, nên một loạt push dồn
+ * dập chỉ tốn tối đa một lượt trên hàng đợi JavaFX cho mỗi lần vẽ.
+ */
+public final class FxUpdateCoalescer {
+
+    private final Executor fxExecutor;
+    // Thứ tự chèn = thứ tự chạy; chỉ truy cập khi giữ khóa this
+    private final Map<String, Runnable> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    public FxUpdateCoalescer() {
+        this(Platform::runLater);
+    }
+
+    public FxUpdateCoalescer(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+    }
+
+    /** Ghi đè cập nhật đang chờ cùng khóa (ví dụ "status"); gọi được từ mọi luồng. */
+    public void update(String key, Runnable action) {
+        LicenseMetrics.shared().counter("license_fx_updates_total").increment();
+        synchronized (this) {
+            pending.put(key, action);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        fxExecutor.execute(this::flush);
+    }
+
+    private void flush() {
+        Runnable[] batch;
+        synchronized (this) {
+            batch = pending.values().toArray(Runnable[]::new);
+            pending.clear();
+            scheduled = false;
+        }
+        LicenseMetrics.shared().counter("license_fx_batches_total").increment();
+        for (Runnable action : batch) {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.hsf;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tính chu kỳ heartbeat tiếp theo: theo gợi ý của server khi thành công,
+ * lùi theo hàm mũ có jitter khi thất bại liên tiếp (bắt đầu từ chu kỳ gốc hoặc gợi ý của server nếu dài hơn,
+ * không ngắn hơn Retry-After), và trở về chu kỳ gốc khi hồi phục.
+ */
+public class HeartbeatBackoff {
+
+    private static final Duration MIN_INTERVAL = Duration.ofSeconds(1);
+    private static final double JITTER = 0.1;
+    private static final int MAX_EXPONENT = 16;
+
+    private final Duration base;
+    private final Duration max;
+
+    private int consecutiveFailures;
+    private Duration serverHint;
+    private Duration retryAfter;
+
+    public HeartbeatBackoff(Duration base, Duration max) {
+        this.base = base;
+        this.max = max;
+    }
+
+    /** Heartbeat thành công; hint là chu kỳ server đề nghị (null: giữ gợi ý trước đó). */
+    public synchronized void onSuccess(Duration hint) {
+        consecutiveFailures = 0;
+        retryAfter = null;
+        if (hint != null) {
+            serverHint = clamp(hint);
+        }
+    }
+
+    /** Chu kỳ server đẩy xuống (CONFIG), áp dụng từ nhịp kế tiếp. */
+    public synchronized void setServerHint(Duration hint) {
+        serverHint = clamp(hint);
+    }
+
+    /** Heartbeat thất bại; retryAfter lấy từ header Retry-After nếu server trả về (có thể null). */
+    public synchronized void onFailure(Duration retryAfter) {
+        if (consecutiveFailures < MAX_EXPONENT) {
+            consecutiveFailures++;
+        }
+        this.retryAfter = retryAfter == null ? null : clamp(retryAfter);
+    }
+
+    public synchronized Duration nextDelay() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (consecutiveFailures == 0) {
+            long periodMs = (serverHint != null ? serverHint : base).toMillis();
+            return Duration.ofMillis(LicenseScheduler.jittered(periodMs, JITTER));
+        }
+        // Lùi từ chu kỳ server yêu cầu (nếu dài hơn chu kỳ gốc): server đang giảm tải thì không retry dày hơn
+        long startMs = Math.max(base.toMillis(), serverHint != null ? serverHint.toMillis() : 0);
+        // "Equal jitter": một nửa cố định, một nửa ngẫu nhiên, để các client không retry cùng nhịp
+        long capMs = Math.min(max.toMillis(), startMs << consecutiveFailures);
+        long delayMs = capMs / 2 + random.nextLong(capMs / 2 + 1);
+        if (retryAfter != null && retryAfter.toMillis() > delayMs) {
+            delayMs = retryAfter.toMillis();
+        }
+        return Duration.ofMillis(delayMs);
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /** Lỗi tạm thời nên thử lại (5xx, 408 hết thời gian, 429 bị giới hạn tần suất), không phải server từ chối. */
+    public static boolean isTransient(int statusCode) {
+        return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+    }
+
+    /** Header Retry-After dạng số giây, hoặc null (không có / dạng HTTP-date). */
+    public static Duration retryAfter(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After")
+                    .map(value -> Duration.ofSeconds(Long.parseLong(value.trim())))
+                    .orElse(null);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private Duration clamp(Duration value) {
+        if (value.compareTo(MIN_INTERVAL) < 0) {
+            return MIN_INTERVAL;
+        }
+        return value.compareTo(max) > 0 ? max : value;
+    }
+}
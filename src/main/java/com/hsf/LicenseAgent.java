@@ -0,0 +1,383 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * Agent license dùng chung cho mọi client trên một máy (terminal server chạy hàng chục LicenseClient).
+ * Client kết nối qua Unix domain socket và đăng ký license đã kích hoạt; agent giữ một
+ * {@link LicenseManager} cho mỗi device id nên cả máy chỉ có một vòng heartbeat gộp và một WebSocket
+ * lên server. LOCK (và UNLOCK, QUOTA, CONFIG) từ server được chuyển lại cho mọi client đã đăng ký license
+ * đó, hoặc mọi client của device khi message không ghi licenseKey.
+ * Chạy: mvn compile exec:java -Dexec.mainClass="com.hsf.LicenseAgent"
+ *
+ * Giao thức: mỗi dòng một object JSON (UTF-8, kết thúc bằng \n).
+ * Client → agent: {"type":"REGISTER"|"UNREGISTER","licenseKey":..,"deviceId":..,"productName":..}
+ * Agent → client: {"type":"LOCK","licenseKey":..,"reason":..,"data":..} (cùng dạng message push của server).
+ * Client đóng kết nối (kể cả khi tiến trình chết) thì mọi đăng ký của nó được gỡ.
+ */
+public final class LicenseAgent {
+
+    private static final Log LOG = Log.get(LicenseAgent.class);
+    private static final String DEFAULT_SOCKET_FILE = "hsf-license-agent.sock";
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    // LOCK đi qua LockListener để manager của agent gỡ license trước khi chuyển tiếp; HEARTBEAT_ACK để client
+    // gia hạn token offline của mình
+    private static final List<String> FORWARDED_TYPES = List.of(PushEventBus.UNLOCK, PushEventBus.QUOTA,
+            PushEventBus.CONFIG, PushEventBus.HEARTBEAT_ACK);
+
+    /** Một license của một device, được giữ khi còn ít nhất một client đăng ký. */
+    private record Subscription(String deviceId, String licenseKey) {
+    }
+
+    private final Path socketPath;
+    private final LicenseTransport transport;
+    private final LicenseScheduler scheduler;
+    private final EndpointSelector wsEndpoints;
+    private final Map<String, LicenseManager> managers = new ConcurrentHashMap<>();
+    // Chỉ sửa khi giữ khóa this
+    private final Map<Subscription, Set<Connection>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    private ServerSocketChannel server;
+
+    /** @param wsEndpoints dùng chung cho manager của mọi device để cùng theo dõi độ trễ/lỗi của từng server */
+    public LicenseAgent(Path socketPath, LicenseTransport transport, LicenseScheduler scheduler,
+                        EndpointSelector wsEndpoints) {
+        this.socketPath = socketPath;
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.wsEndpoints = wsEndpoints;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path socket = socketPathFromSystemProperties();
+        if (socket == null) {
+            System.err.println("license.agent=false, agent disabled");
+            System.exit(2);
+        }
+        LicenseAgent agent = new LicenseAgent(socket, LicenseTransport.shared(), LicenseScheduler.shared(),
+                LicenseManager.wsEndpointsFromSystemProperties()).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(agent::stop, "license-agent-stop"));
+        MetricsExporter.startFromSystemProperties();
+        System.out.println("=== License agent ===");
+        System.out.println("Socket: " + socket);
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Đường dẫn socket của agent (-Dlicense.agent.socket, mặc định hsf-license-agent.sock trong thư mục riêng
+     * của user: $XDG_RUNTIME_DIR/hsf-license, không có thì run trong LicensePaths), hoặc null nếu tắt bằng
+     * -Dlicense.agent=false. Không dùng thư mục tạm chung: user khác có thể tạo socket giả ở đó trước.
+     */
+    public static Path socketPathFromSystemProperties() {
+        if (!Boolean.parseBoolean(System.getProperty("license.agent", "true"))) {
+            return null;
+        }
+        String configured = System.getProperty("license.agent.socket");
+        if (configured != null && !configured.isBlank()) {
+            return Path.of(configured);
+        }
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        Path dir = runtimeDir != null && !runtimeDir.isBlank()
+                ? Path.of(runtimeDir, "hsf-license")
+                : LicensePaths.resolve("run");
+        return dir.resolve(DEFAULT_SOCKET_FILE);
+    }
+
+    /**
+     * Tài khoản phải sở hữu socket (-Dlicense.agent.owner, mặc định user hiện tại). Agent dùng chung cho
+     * nhiều user chạy bằng tài khoản dịch vụ thì client đặt tên tài khoản đó.
+     */
+    static String expectedOwner() {
+        return System.getProperty("license.agent.owner", System.getProperty("user.name"));
+    }
+
+    /**
+     * Kiểm tra trước khi client tin socket: thư mục chứa thuộc về user hiện tại hoặc root và không cho
+     * user khác ghi (không ai thay được socket), socket thuộc về {@link #expectedOwner()}.
+     * Chỉ kiểm tra trên hệ thống POSIX; trên Windows thư mục trong LicensePaths đã là của riêng user.
+     */
+    static void checkTrusted(Path socketPath) throws IOException {
+        checkDirectory(socketPath.toAbsolutePath().getParent());
+        if (POSIX) {
+            String owner = Files.getOwner(socketPath).getName();
+            if (!owner.equals(expectedOwner())) {
+                throw new IOException("Agent socket " + socketPath + " is owned by " + owner
+                        + ", expected " + expectedOwner());
+            }
+        }
+    }
+
+    private static void checkDirectory(Path dir) throws IOException {
+        if (!POSIX) {
+            return;
+        }
+        String owner = Files.getOwner(dir).getName();
+        if (!owner.equals(System.getProperty("user.name")) && !owner.equals("root")) {
+            throw new IOException("Agent socket directory " + dir + " is owned by " + owner);
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir);
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException("Agent socket directory " + dir + " is writable by other users ("
+                    + PosixFilePermissions.toString(permissions) + ")");
+        }
+    }
+
+    public synchronized LicenseAgent start() throws IOException {
+        Path dir = socketPath.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir)) {
+            if (POSIX) {
+                Files.createDirectories(dir,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(dir);
+            }
+        }
+        checkDirectory(dir);
+        if (isListening(socketPath)) {
+            throw new IOException("Another license agent is listening on " + socketPath);
+        }
+        // File socket còn sót lại sau khi agent trước bị kill
+        Files.deleteIfExists(socketPath);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        Thread.ofVirtual().name("license-agent-accept").start(this::acceptLoop);
+
+        LicenseMetrics metrics = LicenseMetrics.shared();
+        metrics.gauge("license_agent_clients", connections::size);
+        metrics.gauge("license_agent_licenses", subscribers::size);
+        LOG.event(Log.Level.INFO, "agent_started", "socket", socketPath);
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.debug(() -> "Closing agent socket: " + e);
+        }
+        server = null;
+        for (Connection connection : List.copyOf(connections)) {
+            connection.close();
+        }
+        // Không hủy kích hoạt: client vẫn đang chạy sẽ tự heartbeat khi mất agent
+        managers.values().forEach(LicenseManager::stop);
+        managers.clear();
+        subscribers.clear();
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            LOG.warn("Cannot delete agent socket " + socketPath, e);
+        }
+    }
+
+    public int getClientCount() {
+        return connections.size();
+    }
+
+    private void acceptLoop() {
+        ServerSocketChannel listening = server;
+        while (listening != null && listening.isOpen()) {
+            try {
+                Connection connection = new Connection(listening.accept());
+                connections.add(connection);
+                Thread.ofVirtual().name("license-agent-client").start(connection::readLoop);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                LOG.warn("Accepting agent client failed", e);
+            }
+        }
+    }
+
+    private synchronized void subscribe(Connection connection, Subscription subscription, String productName) {
+        Set<Connection> current = subscribers.computeIfAbsent(subscription, key -> new HashSet<>());
+        boolean first = current.isEmpty();
+        if (!current.add(connection)) {
+            return;
+        }
+        connection.subscriptions.add(subscription);
+        if (first) {
+            LicenseManager manager = managers.computeIfAbsent(subscription.deviceId(), this::newManager);
+            manager.register(subscription.licenseKey(), productName,
+                    (licenseKey, reason) -> onLocked(subscription, reason));
+        }
+        LicenseMetrics.shared().counter("license_agent_requests_total", "type", "REGISTER").increment();
+    }
+
+    private LicenseManager newManager(String deviceId) {
+        LicenseManager manager = new LicenseManager(transport, scheduler, deviceId, wsEndpoints, false).start();
+        for (String type : FORWARDED_TYPES) {
+            manager.subscribe(type, message -> forward(deviceId, message));
+        }
+        return manager;
+    }
+
+    private synchronized void unsubscribe(Connection connection, Subscription subscription) {
+        connection.subscriptions.remove(subscription);
+        Set<Connection> current = subscribers.get(subscription);
+        if (current == null || !current.remove(connection) || !current.isEmpty()) {
+            return;
+        }
+        // Client cuối cùng của license đã đi: gỡ khỏi heartbeat và WebSocket của agent
+        subscribers.remove(subscription);
+        LicenseManager manager = managers.get(subscription.deviceId());
+        if (manager != null) {
+            manager.unregister(subscription.licenseKey());
+            if (manager.getLicenseKeys().isEmpty()) {
+                managers.remove(subscription.deviceId());
+            }
+        }
+    }
+
+    /** LOCK từ server (luồng của WebSocket): gửi cho mọi client đang giữ license. */
+    private void onLocked(Subscription subscription, String reason) {
+        Set<Connection> targets;
+        synchronized (this) {
+            Set<Connection> current = subscribers.remove(subscription);
+            targets = current == null ? Set.of() : Set.copyOf(current);
+            targets.forEach(connection -> connection.subscriptions.remove(subscription));
+            LicenseManager manager = managers.get(subscription.deviceId());
+            if (manager != null && manager.getLicenseKeys().isEmpty()) {
+                managers.remove(subscription.deviceId());
+            }
+        }
+        String line = LicenseJson.encodePush(new PushMessage(PushEventBus.LOCK, reason, PushMessage.NO_SEQ,
+                subscription.licenseKey()));
+        for (Connection connection : targets) {
+            connection.send(line);
+        }
+        LicenseMetrics.shared().counter("license_agent_forwarded_total", "type", PushEventBus.LOCK).add(targets.size());
+    }
+
+    /** Message khác LOCK (luồng worker của manager): gửi cho client giữ license, hoặc mọi client của device. */
+    private void forward(String deviceId, PushMessage message) {
+        Set<Connection> targets = new HashSet<>();
+        synchronized (this) {
+            subscribers.forEach((subscription, connections) -> {
+                if (subscription.deviceId().equals(deviceId) && (message.licenseKey() == null
+                        || subscription.licenseKey().equals(message.licenseKey()))) {
+                    targets.addAll(connections);
+                }
+            });
+        }
+        String line = LicenseJson.encodePush(message);
+        for (Connection connection : targets) {
+            connection.send(line);
+        }
+        LicenseMetrics.shared().counter("license_agent_forwarded_total", "type", message.type()).add(targets.size());
+    }
+
+    /** Một tiến trình client đang kết nối. */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        // Đăng ký của kết nối này, để gỡ hết khi client đóng; sửa dưới khóa của LicenseAgent
+        private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void readLoop() {
+            try {
+                LicenseAgentClient.readLines(channel, line -> {
+                    if (!line.isBlank()) {
+                        handle(line);
+                    }
+                });
+            } catch (IOException e) {
+                LOG.debug(() -> "Agent client disconnected: " + e);
+            } finally {
+                close();
+            }
+        }
+
+        private void handle(String line) {
+            JsonObject request;
+            try {
+                request = LicenseJson.gson().fromJson(line, JsonObject.class);
+            } catch (JsonParseException e) {
+                LOG.warn("Ignoring malformed agent request: " + line);
+                return;
+            }
+            String type = string(request, "type");
+            String licenseKey = string(request, "licenseKey");
+            String deviceId = string(request, "deviceId");
+            if (type == null || licenseKey == null || deviceId == null) {
+                LOG.warn("Ignoring incomplete agent request: " + line);
+                return;
+            }
+            Subscription subscription = new Subscription(deviceId, licenseKey);
+            switch (type) {
+                case "REGISTER" -> subscribe(this, subscription, string(request, "productName"));
+                case "UNREGISTER" -> unsubscribe(this, subscription);
+                default -> LOG.debug(() -> "Unknown agent request type: " + type);
+            }
+        }
+
+        void send(String line) {
+            try {
+                LicenseAgentClient.writeLine(channel, writeLock, line);
+            } catch (IOException e) {
+                LOG.debug(() -> "Cannot write to agent client: " + e);
+                close();
+            }
+        }
+
+        void close() {
+            if (!connections.remove(this)) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug(() -> "Closing agent client: " + e);
+            }
+            for (Subscription subscription : List.copyOf(subscriptions)) {
+                unsubscribe(this, subscription);
+            }
+        }
+    }
+
+    /** Agent khác đang chạy trên socket này (kết nối thử thành công). */
+    static boolean isListening(Path socketPath) {
+        if (!Files.exists(socketPath)) {
+            return false;
+        }
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String string(JsonObject json, String field) {
+        return json.has(field) && !json.get(field).isJsonNull() ? json.get(field).getAsString() : null;
+    }
+}
@@ -0,0 +1,171 @@
+package com.hsf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Kết nối từ một tiến trình client tới {@link LicenseAgent} của máy. LicenseManager dùng kết nối này
+ * thay cho heartbeat và WebSocket riêng khi agent đang chạy; LOCK agent chuyển về được giao như push
+ * của server. Khi agent mất kết nối, onLost được gọi một lần để manager tự heartbeat trở lại.
+ */
+public final class LicenseAgentClient {
+
+    private static final Log LOG = Log.get(LicenseAgentClient.class);
+    // Giới hạn một dòng giao thức, chặn bên kia gửi dữ liệu không có \n
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Consumer<PushMessage> onPush;
+    private final Runnable onLost;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean closed;
+
+    private LicenseAgentClient(SocketChannel channel, Consumer<PushMessage> onPush, Runnable onLost) {
+        this.channel = channel;
+        this.onPush = onPush;
+        this.onLost = onLost;
+    }
+
+    /** Kết nối tới agent; null nếu không có agent nào đang lắng nghe trên socket hoặc socket không đáng tin. */
+    public static LicenseAgentClient connect(Path socketPath, Consumer<PushMessage> onPush, Runnable onLost) {
+        if (socketPath == null || !Files.exists(socketPath)) {
+            return null;
+        }
+        try {
+            LicenseAgent.checkTrusted(socketPath);
+        } catch (IOException e) {
+            LOG.event(Log.Level.WARN, "agent_untrusted", "socket", socketPath, "error", e.getMessage());
+            return null;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            LOG.debug(() -> "No license agent on " + socketPath + ": " + e);
+            return null;
+        }
+        LicenseAgentClient client = new LicenseAgentClient(channel, onPush, onLost);
+        Thread.ofVirtual().name("license-agent-reader").start(client::readLoop);
+        LOG.event(Log.Level.INFO, "agent_connected", "socket", socketPath);
+        return client;
+    }
+
+    /** Gửi REGISTER; false nếu không ghi được (agent đã đóng). */
+    public boolean register(String licenseKey, String deviceId, String productName) {
+        return send("REGISTER", licenseKey, deviceId, productName);
+    }
+
+    public boolean unregister(String licenseKey, String deviceId) {
+        return send("UNREGISTER", licenseKey, deviceId, null);
+    }
+
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    /** Đóng chủ động (không còn license nào): không gọi onLost. */
+    public void shutdown() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.debug(() -> "Closing agent connection: " + e);
+        }
+    }
+
+    private boolean send(String type, String licenseKey, String deviceId, String productName) {
+        JsonObject request = new JsonObject();
+        request.addProperty("type", type);
+        request.addProperty("licenseKey", licenseKey);
+        request.addProperty("deviceId", deviceId);
+        if (productName != null) {
+            request.addProperty("productName", productName);
+        }
+        try {
+            writeLine(channel, writeLock, LicenseJson.gson().toJson(request));
+            return true;
+        } catch (IOException e) {
+            LOG.debug(() -> "Cannot write to license agent: " + e);
+            lost();
+            return false;
+        }
+    }
+
+    private void readLoop() {
+        try {
+            readLines(channel, line -> {
+                PushMessage message = LicenseJson.decodePush(line);
+                if (message != null) {
+                    onPush.accept(message);
+                }
+            });
+        } catch (IOException e) {
+            LOG.debug(() -> "License agent connection closed: " + e);
+        }
+        lost();
+    }
+
+    private void lost() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.debug(() -> "Closing agent connection: " + e);
+        }
+        LOG.warn("License agent connection lost, falling back to direct heartbeat");
+        onLost.run();
+    }
+
+    /**
+     * Đọc từng dòng UTF-8 tới khi kênh đóng. Không dùng Channels.newReader: reader đó giữ monitor khi chờ
+     * đọc nên ghim virtual thread vào luồng carrier, vài kết nối là đủ chặn cả scheduler.
+     */
+    static void readLines(SocketChannel channel, Consumer<String> onLine) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    onLine.accept(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                } else if (line.size() < MAX_LINE_BYTES) {
+                    line.write(b);
+                } else {
+                    throw new IOException("Agent protocol line exceeds " + MAX_LINE_BYTES + " bytes");
+                }
+            }
+            buffer.clear();
+        }
+    }
+
+    static void writeLine(SocketChannel channel, ReentrantLock writeLock, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        writeLock.lock();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
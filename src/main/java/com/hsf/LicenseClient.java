@@ -1,34 +1,88 @@
 package com.hsf;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
+import javafx.application.Platform;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 public class LicenseClient extends Application {
 
+    private static final Log LOG = Log.get(LicenseClient.class);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(3);
+
     private static Scene scene;
 
+    private CompletableFuture<LicenseTokenCache.CachedToken> pendingToken;
+
+    /** Chạy trên luồng launcher trước start(): đọc token offline và parse FXML song song trong nền. */
+    @Override
+    public void init() {
+        pendingToken = CompletableFuture.supplyAsync(LicenseTokenCache::loadValid, LicenseScheduler.shared()::execute);
+        SceneCache.preload("view", "main");
+    }
+
     @Override
     public void start(Stage stage) throws IOException {
-        scene = new Scene(loadFXML("view"), 640, 480);
-        stage.setScene(scene);
-        // Gắn sự kiện đóng cửa sổ để gọi deactivate
-        stage.setOnCloseRequest(event -> {
+        // Có token offline hợp lệ: vào thẳng màn hình chính, xác thực lại trong nền
+        LicenseTokenCache.CachedToken token = pendingToken.join();
+        boolean resumed = false;
+        if (token != null) {
             try {
-                new Controller().deactivate();
+                new Controller().resume(stage, token);
+                resumed = true;
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.warn("Cannot resume from offline token", e);
             }
+        }
+        if (!resumed) {
+            scene = new Scene(loadFXML("view"), 640, 480);
+            stage.setScene(scene);
+        }
+        // Gắn sự kiện đóng cửa sổ để gọi deactivate (giữ token offline cho lần mở sau)
+        stage.setOnCloseRequest(event -> {
+            LicenseManager manager = LicenseManager.shared();
+            if (manager.getLicenseKeys().isEmpty()) {
+                return;
+            }
+            // Ẩn cửa sổ ngay, chờ deactivate mọi license tối đa CLOSE_TIMEOUT rồi mới thoát hẳn
+            Platform.setImplicitExit(false);
+            stage.hide();
+            manager.deactivateAllAsync()
+                    .orTimeout(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            LOG.warn("Deactivate on close failed", error);
+                        }
+                        Platform.exit();
+                    });
         });
+        // Việc không hiển thị để sau khi cửa sổ đã lên
+        stage.setOnShown(event -> Platform.runLater(
+                () -> LicenseScheduler.shared().execute(LicenseClient::afterFirstWindow)));
         stage.show();
     }
 
+    private static void afterFirstWindow() {
+        ProcessHandle.current().info().startInstant().ifPresent(startedAt -> {
+            Duration startup = Duration.between(startedAt, Instant.now());
+            LicenseMetrics.shared().histogram("license_startup_first_window_seconds").recordNanos(startup.toNanos());
+            LOG.event(Log.Level.INFO, "first_window", "ms", startup.toMillis());
+        });
+        MetricsExporter.startFromSystemProperties();
+        // Nạp sẵn HttpClient, Gson và device id để lần bấm "kích hoạt" đầu tiên không phải chờ
+        LicenseTransport.shared();
+        LicenseJson.gson();
+        DeviceIdentity.get();
+    }
+
     private static Parent loadFXML(String fxml) throws IOException {
-        FXMLLoader fxmlLoader = new FXMLLoader(LicenseClient.class.getResource(fxml + ".fxml"));
-        return fxmlLoader.load();
+        return SceneCache.take(fxml).root();
     }
 
     public static void main(String[] args) {
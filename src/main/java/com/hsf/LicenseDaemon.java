@@ -0,0 +1,187 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chạy license không có giao diện (render farm, server): kích hoạt các license cấu hình sẵn, giữ heartbeat
+ * và WebSocket qua {@link LicenseManager} (hoặc {@link LicenseAgent} của máy nếu đang chạy) và báo LOCK
+ * bằng callback hoặc exit code thay cho Alert. Không nạp class JavaFX nào nên chạy được trên runtime
+ * không có JavaFX với heap nhỏ (xem profile daemon trong pom.xml).
+ * Chạy: java -cp "lib/*" com.hsf.LicenseDaemon KEY1 KEY2 (hoặc -Dlicense.daemon.keys=KEY1,KEY2)
+ *
+ * Cấu hình qua system properties (license.daemon.*): keys, onLock (lệnh shell chạy khi license bị khóa,
+ * nhận LICENSE_KEY và LICENSE_REASON qua biến môi trường), exitOnLock (true: thoát ngay khi một license bị
+ * khóa; false: chỉ thoát khi không còn license nào), deactivateOnExit (true), activationRetrySeconds (30).
+ * Sản phẩm lấy từ -Dlicense.product như ứng dụng giao diện.
+ */
+public final class LicenseDaemon {
+
+    private static final Log LOG = Log.get(LicenseDaemon.class);
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_CONFIG = 2;
+    public static final int EXIT_LOCKED = 3;
+    public static final int EXIT_REJECTED = 4;
+
+    private static final Duration ACTIVATION_MAX_BACKOFF = Duration.ofMinutes(5);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(3);
+    private static final Duration HOOK_TIMEOUT = Duration.ofSeconds(30);
+
+    public record Config(List<String> licenseKeys, String productName, String onLockCommand, boolean exitOnLock,
+                         boolean deactivateOnExit, Duration activationRetry) {
+
+        public static Config fromSystemProperties(String[] args) {
+            List<String> keys = new ArrayList<>();
+            for (String key : System.getProperty("license.daemon.keys", "").split(",")) {
+                if (!key.isBlank()) {
+                    keys.add(key.strip());
+                }
+            }
+            Arrays.stream(args).filter(arg -> !arg.isBlank()).forEach(keys::add);
+            String onLock = System.getProperty("license.daemon.onLock");
+            return new Config(
+                    List.copyOf(keys),
+                    System.getProperty("license.product", "Product 2"),
+                    onLock == null || onLock.isBlank() ? null : onLock,
+                    Boolean.parseBoolean(System.getProperty("license.daemon.exitOnLock", "true")),
+                    Boolean.parseBoolean(System.getProperty("license.daemon.deactivateOnExit", "true")),
+                    Duration.ofSeconds(Long.getLong("license.daemon.activationRetrySeconds", 30)));
+        }
+    }
+
+    private final Config config;
+    private final LicenseTransport transport;
+    private final LicenseManager manager;
+    private final LicenseScheduler scheduler;
+    private final LicenseManager.LockListener callback;
+    // licenseKey -> backoff của lần kích hoạt đang thử lại
+    private final Map<String, HeartbeatBackoff> pending = new ConcurrentHashMap<>();
+    private final CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+
+    /** @param callback nhận LOCK trên luồng worker (có thể null khi chỉ dùng exit code / lệnh onLock) */
+    public LicenseDaemon(Config config, LicenseTransport transport, LicenseManager manager, LicenseScheduler scheduler,
+                         LicenseManager.LockListener callback) {
+        this.config = config;
+        this.transport = transport;
+        this.manager = manager;
+        this.scheduler = scheduler;
+        this.callback = callback;
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.fromSystemProperties(args);
+        if (config.licenseKeys().isEmpty()) {
+            System.err.println("Usage: LicenseDaemon KEY [KEY...] (or -Dlicense.daemon.keys=KEY1,KEY2)");
+            System.exit(EXIT_CONFIG);
+        }
+        LicenseDaemon daemon = new LicenseDaemon(config, LicenseTransport.shared(), LicenseManager.shared(),
+                LicenseScheduler.shared(), null);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "license-daemon-stop"));
+        MetricsExporter.startFromSystemProperties();
+        int code = daemon.start().join();
+        LOG.event(Log.Level.INFO, "daemon_exit", "code", code);
+        System.exit(code);
+    }
+
+    /** Kích hoạt mọi license trong nền; future hoàn thành với exit code khi daemon cần dừng. */
+    public CompletableFuture<Integer> start() {
+        LOG.event(Log.Level.INFO, "daemon_start", "licenses", config.licenseKeys().size(),
+                "product", config.productName(), "device", manager.getDeviceId());
+        for (String licenseKey : config.licenseKeys()) {
+            pending.put(licenseKey, new HeartbeatBackoff(config.activationRetry(), ACTIVATION_MAX_BACKOFF));
+            scheduler.execute(() -> activate(licenseKey));
+        }
+        return exitCode;
+    }
+
+    public CompletableFuture<Integer> getExitCode() {
+        return exitCode;
+    }
+
+    /** Hủy kích hoạt (nếu bật) và dừng heartbeat; gọi từ shutdown hook. */
+    public void stop() {
+        exitCode.complete(EXIT_OK);
+        if (!config.deactivateOnExit() || manager.getLicenseKeys().isEmpty()) {
+            manager.stop();
+            return;
+        }
+        try {
+            manager.deactivateAllAsync().get(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            LOG.warn("Deactivate on exit failed", e);
+        }
+        manager.stop();
+    }
+
+    private void activate(String licenseKey) {
+        HeartbeatBackoff backoff = pending.get(licenseKey);
+        if (backoff == null || exitCode.isDone()) {
+            return;
+        }
+        try {
+            HttpResponse<String> response = transport.activate(licenseKey, manager.getDeviceId(), config.productName());
+            if (response.statusCode() == 200) {
+                pending.remove(licenseKey);
+                manager.register(licenseKey, config.productName(), this::onLocked);
+                LOG.event(Log.Level.INFO, "activate_ok", "license", licenseKey);
+                return;
+            }
+            if (!HeartbeatBackoff.isTransient(response.statusCode())) {
+                LOG.event(Log.Level.ERROR, "activate_rejected", "license", licenseKey,
+                        "status", response.statusCode(), "message", LicenseJson.errorMessage(response.body()));
+                exitCode.complete(EXIT_REJECTED);
+                return;
+            }
+            backoff.onFailure(HeartbeatBackoff.retryAfter(response));
+        } catch (InterruptedException e) {
+            return;
+        } catch (Exception e) {
+            backoff.onFailure(null);
+            LOG.event(Log.Level.WARN, "activate_unreachable", "license", licenseKey, "error", e.toString());
+        }
+        scheduler.schedule(() -> activate(licenseKey), backoff.nextDelay());
+    }
+
+    /** LOCK từ server (luồng worker của PushEventBus): callback, lệnh onLock rồi exit code. */
+    private void onLocked(String licenseKey, String reason) {
+        LOG.event(Log.Level.WARN, "daemon_locked", "license", licenseKey, "reason", reason);
+        if (callback != null) {
+            callback.onLocked(licenseKey, reason);
+        }
+        if (config.onLockCommand() != null) {
+            runHook(licenseKey, reason);
+        }
+        if (config.exitOnLock() || (manager.getLicenseKeys().isEmpty() && pending.isEmpty())) {
+            exitCode.complete(EXIT_LOCKED);
+        }
+    }
+
+    private void runHook(String licenseKey, String reason) {
+        boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+        ProcessBuilder builder = new ProcessBuilder(windows
+                ? List.of("cmd", "/c", config.onLockCommand())
+                : List.of("sh", "-c", config.onLockCommand()));
+        builder.environment().put("LICENSE_KEY", licenseKey);
+        builder.environment().put("LICENSE_REASON", reason);
+        builder.inheritIO();
+        try {
+            Process process = builder.start();
+            if (!process.waitFor(HOOK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                LOG.warn("onLock command still running after " + HOOK_TIMEOUT.toSeconds() + "s, not waiting");
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot run onLock command", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
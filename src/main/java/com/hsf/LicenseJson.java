@@ -0,0 +1,272 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Codec JSON dùng chung, thread-safe. Request được ghi thẳng bằng JsonWriter, response và message
+ * WebSocket được đọc bằng JsonReader chỉ lấy các trường cần thiết, không dựng cây JsonObject.
+ */
+public final class LicenseJson {
+
+    private static final Gson GSON = new Gson();
+
+    private LicenseJson() {
+    }
+
+    public static Gson gson() {
+        return GSON;
+    }
+
+    public static String encode(LicenseRequest request) {
+        StringWriter out = new StringWriter(96);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("licenseKey").value(request.licenseKey());
+            writer.name("deviceId").value(request.deviceId());
+            if (request.productName() != null) {
+                writer.name("productName").value(request.productName());
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // StringWriter không ném IOException
+        }
+        return out.toString();
+    }
+
+    /**
+     * Body của POST /heartbeat/batch: {"deviceId":"...","licenses":[{"licenseKey":"...","productName":"..."}]}.
+     */
+    public static String encodeBatch(String deviceId, Collection<LicenseRequest> licenses) {
+        StringWriter out = new StringWriter(64 + licenses.size() * 64);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("deviceId").value(deviceId);
+            writer.name("licenses").beginArray();
+            for (LicenseRequest license : licenses) {
+                writer.beginObject();
+                writer.name("licenseKey").value(license.licenseKey());
+                if (license.productName() != null) {
+                    writer.name("productName").value(license.productName());
+                }
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /** Message push dạng JSON text (stub server và LicenseAgent gửi cho client). */
+    public static String encodePush(PushMessage message) {
+        StringWriter out = new StringWriter(96);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("type").value(message.type());
+            if (message.hasSeq()) {
+                writer.name("seq").value(message.seq());
+            }
+            if (message.licenseKey() != null) {
+                writer.name("licenseKey").value(message.licenseKey());
+            }
+            if (message.reason() != null) {
+                writer.name("reason").value(message.reason());
+            }
+            if (message.data() != null) {
+                writer.name("data").jsonValue(message.data());
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Các license bị server từ chối trong response batch
+     * {"results":[{"licenseKey":"...","ok":false,"message":"..."}]} → licenseKey → message.
+     */
+    public static Map<String, String> decodeBatchFailures(String json) {
+        Map<String, String> failures = new HashMap<>();
+        if (json == null || json.isEmpty()) {
+            return failures;
+        }
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"results".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String licenseKey = null;
+                    String message = null;
+                    boolean ok = true;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            continue;
+                        }
+                        switch (name) {
+                            case "licenseKey" -> licenseKey = reader.nextString();
+                            case "ok" -> ok = reader.nextBoolean();
+                            case "message" -> message = readScalar(reader);
+                            default -> reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    if (!ok && licenseKey != null) {
+                        failures.put(licenseKey, message);
+                    }
+                }
+                reader.endArray();
+            }
+        } catch (Exception e) {
+            // response không đúng định dạng: coi như không có license nào bị từ chối
+        }
+        return failures;
+    }
+
+    /** Trường "message" trong body lỗi, hoặc nguyên body nếu không đọc được. */
+    public static String errorMessage(String responseBody) {
+        String message = readString(responseBody, "message");
+        return message != null ? message : responseBody;
+    }
+
+    /** Giá trị chuỗi của một trường cấp cao nhất, null nếu không có hoặc body không phải JSON object. */
+    public static String readString(String json, String field) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (field.equals(reader.nextName()) && reader.peek() != JsonToken.NULL) {
+                    return readScalar(reader);
+                }
+                reader.skipValue();
+            }
+        } catch (Exception e) {
+            // không phải JSON hợp lệ
+        }
+        return null;
+    }
+
+    /** Giá trị số của một trường cấp cao nhất, hoặc fallback. */
+    public static long readLong(String json, String field, long fallback) {
+        String value = readString(json, field);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Đọc message WebSocket một lượt, chỉ lấy type/reason/seq/licenseKey/data và bỏ qua phần còn lại.
+     * Trả về null nếu frame không phải JSON object.
+     */
+    public static PushMessage decodePush(String frame) {
+        String type = null;
+        String reason = null;
+        String licenseKey = null;
+        String data = null;
+        long seq = PushMessage.NO_SEQ;
+        try (JsonReader reader = new JsonReader(new StringReader(frame))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "type" -> type = reader.nextString();
+                    case "reason" -> reason = readScalar(reader);
+                    case "licenseKey" -> licenseKey = reader.nextString();
+                    case "seq" -> seq = reader.nextLong();
+                    case "data" -> data = copyValue(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (Exception e) {
+            return null;
+        }
+        return new PushMessage(type, reason, seq, licenseKey, data);
+    }
+
+    /** Chép nguyên giá trị kế tiếp (object/array/scalar) thành chuỗi JSON, không dựng cây JsonElement. */
+    private static String copyValue(JsonReader reader) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        int depth = 0;
+        do {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    writer.beginObject();
+                    depth++;
+                }
+                case END_OBJECT -> {
+                    reader.endObject();
+                    writer.endObject();
+                    depth--;
+                }
+                case BEGIN_ARRAY -> {
+                    reader.beginArray();
+                    writer.beginArray();
+                    depth++;
+                }
+                case END_ARRAY -> {
+                    reader.endArray();
+                    writer.endArray();
+                    depth--;
+                }
+                case NAME -> writer.name(reader.nextName());
+                case STRING -> writer.value(reader.nextString());
+                // Giữ nguyên cách viết của số (không đổi 1.0 thành 1 hay mất độ chính xác)
+                case NUMBER -> writer.jsonValue(reader.nextString());
+                case BOOLEAN -> writer.value(reader.nextBoolean());
+                case NULL -> {
+                    reader.nextNull();
+                    writer.nullValue();
+                }
+                default -> throw new IOException("Unexpected token in data");
+            }
+        } while (depth > 0);
+        writer.flush();
+        return out.toString();
+    }
+
+    private static String readScalar(JsonReader reader) throws IOException {
+        return switch (reader.peek()) {
+            case STRING, NUMBER -> reader.nextString();
+            case BOOLEAN -> Boolean.toString(reader.nextBoolean());
+            default -> {
+                reader.skipValue();
+                yield null;
+            }
+        };
+    }
+}
@@ -0,0 +1,436 @@
+package com.hsf;
+
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Quản lý mọi license đang kích hoạt của tiến trình: một vòng heartbeat gộp (POST /heartbeat/batch)
+ * và một kết nối WebSocket chung, LOCK được chuyển tới đúng license theo licenseKey.
+ * Không phụ thuộc JavaFX; phần giao diện đăng ký {@link LockListener} để nhận sự kiện khóa.
+ * Message push được xử lý trên {@link PushEventBus}, không chặn luồng đọc của socket; giao diện đăng ký
+ * thêm handler cho UNLOCK/QUOTA... qua {@link #subscribe}.
+ * Nếu máy có {@link LicenseAgent} đang chạy, license được đăng ký với agent và tiến trình không tự
+ * heartbeat hay mở WebSocket; mất agent thì quay về tự làm.
+ */
+public class LicenseManager implements LicenseWebSocketClient.Listener {
+
+    private static final Log LOG = Log.get(LicenseManager.class);
+    public static final String DEFAULT_WS_URL = "ws://localhost:8080";
+    private static final Duration HEARTBEAT_PERIOD = Duration.ofSeconds(10);
+    private static final Duration HEARTBEAT_MAX_BACKOFF = Duration.ofMinutes(5);
+    // -Dlicense.heartbeat.legacy=true: luôn gửi heartbeat qua HTTP kể cả khi WebSocket đang sống
+    private static final boolean LEGACY_HEARTBEAT = Boolean.getBoolean("license.heartbeat.legacy");
+    private static final String DEFAULT_LOCK_REASON = "License has been revoked";
+
+    private static volatile LicenseManager shared;
+
+    /** Nhận sự kiện license bị khóa từ server. */
+    public interface LockListener {
+        void onLocked(String licenseKey, String reason);
+    }
+
+    private record Registration(String licenseKey, String productName, LockListener listener) {
+    }
+
+    private final LicenseTransport transport;
+    private final LicenseScheduler scheduler;
+    private final String deviceId;
+    private final EndpointSelector wsEndpoints;
+    private final boolean persistTokens;
+    private final Map<String, Registration> licenses = new ConcurrentHashMap<>();
+    private final HeartbeatBackoff heartbeatBackoff;
+    private final PushEventBus events;
+
+    private LicenseScheduler.Task heartbeatTask;
+    private volatile LicenseWebSocketClient wsClient;
+    private volatile boolean pushChannelLive;
+    // Server cũ không có /heartbeat/batch: quay về gọi /heartbeat từng license
+    private volatile boolean batchUnsupported;
+    private Path agentSocket;
+    private volatile LicenseAgentClient agent;
+
+    /**
+     * @param wsUrl         gốc WebSocket (ws://host:port), null để chỉ dùng heartbeat HTTP
+     * @param persistTokens cập nhật LicenseTokenCache sau heartbeat thành công (chỉ bật cho ứng dụng thật)
+     */
+    public LicenseManager(LicenseTransport transport, LicenseScheduler scheduler, String deviceId, String wsUrl,
+                          boolean persistTokens) {
+        this(transport, scheduler, deviceId, wsUrl, persistTokens, HEARTBEAT_PERIOD);
+    }
+
+    public LicenseManager(LicenseTransport transport, LicenseScheduler scheduler, String deviceId, String wsUrl,
+                          boolean persistTokens, Duration heartbeatPeriod) {
+        this(transport, scheduler, deviceId, wsUrl == null ? null : EndpointSelector.of(wsUrl), persistTokens,
+                heartbeatPeriod);
+    }
+
+    /** @param wsEndpoints các gốc WebSocket (nhiều vùng), null để chỉ dùng heartbeat HTTP */
+    public LicenseManager(LicenseTransport transport, LicenseScheduler scheduler, String deviceId,
+                          EndpointSelector wsEndpoints, boolean persistTokens) {
+        this(transport, scheduler, deviceId, wsEndpoints, persistTokens, HEARTBEAT_PERIOD);
+    }
+
+    public LicenseManager(LicenseTransport transport, LicenseScheduler scheduler, String deviceId,
+                          EndpointSelector wsEndpoints, boolean persistTokens, Duration heartbeatPeriod) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.deviceId = deviceId;
+        this.wsEndpoints = wsEndpoints;
+        this.persistTokens = persistTokens;
+        this.heartbeatBackoff = new HeartbeatBackoff(heartbeatPeriod, HEARTBEAT_MAX_BACKOFF);
+        this.events = new PushEventBus(scheduler::execute);
+    }
+
+    /** Gắn xử lý LOCK/CONFIG vào bus sự kiện; gọi một lần ngay sau khi tạo, trước {@link #register}. */
+    public LicenseManager start() {
+        events.subscribe(PushEventBus.LOCK, this::onLockEvent);
+        events.subscribe(PushEventBus.CONFIG, this::onConfigEvent);
+        return this;
+    }
+
+    /**
+     * Instance của ứng dụng; gốc WebSocket đổi được bằng -Dlicense.ws.url (ví dụ trỏ tới StubLicenseServer)
+     * hoặc -Dlicense.ws.servers (nhiều gốc cách nhau bằng dấu phẩy).
+     */
+    public static LicenseManager shared() {
+        LicenseManager result = shared;
+        if (result == null) {
+            synchronized (LicenseManager.class) {
+                result = shared;
+                if (result == null) {
+                    result = new LicenseManager(LicenseTransport.shared(), LicenseScheduler.shared(),
+                            DeviceIdentity.get(), wsEndpointsFromSystemProperties(), true).start();
+                    LicenseManager manager = result;
+                    LicenseMetrics metrics = LicenseMetrics.shared();
+                    metrics.gauge("license_managed_licenses", manager.licenses::size);
+                    metrics.gauge("license_heartbeat_consecutive_failures", manager.heartbeatBackoff::getConsecutiveFailures);
+                    metrics.gauge("license_ws_connected", () -> manager.isPushChannelLive() ? 1 : 0);
+                    metrics.gauge("license_agent_connected", () -> manager.isUsingAgent() ? 1 : 0);
+                    metrics.gauge("license_push_queue_depth", manager.events::size);
+                    manager.useAgent(LicenseAgent.socketPathFromSystemProperties());
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    static EndpointSelector wsEndpointsFromSystemProperties() {
+        return EndpointSelector.fromSystemProperties("license.ws.servers", "license.ws.url", DEFAULT_WS_URL);
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /** Dùng LicenseAgent trên socket này (nếu agent đang chạy) cho các license đăng ký sau; null để tắt. */
+    public synchronized void useAgent(Path socketPath) {
+        this.agentSocket = socketPath;
+    }
+
+    public boolean isUsingAgent() {
+        return agent != null;
+    }
+
+    /** Nhận message push theo type (PushEventBus.UNLOCK, QUOTA...) trên luồng worker, không phải luồng socket. */
+    public PushEventBus.Subscription subscribe(String type, Consumer<PushMessage> handler) {
+        return events.subscribe(type, handler);
+    }
+
+    /** Thêm một license đã kích hoạt thành công vào heartbeat và kết nối WebSocket chung. */
+    public void register(String licenseKey, String productName, LockListener listener) {
+        boolean added = licenses.put(licenseKey, new Registration(licenseKey, productName, listener)) == null;
+        if (registerWithAgent(licenseKey, productName)) {
+            return;
+        }
+        startHeartbeat();
+        if (added) {
+            onLicensesChanged();
+        }
+    }
+
+    public void unregister(String licenseKey) {
+        if (licenses.remove(licenseKey) == null) {
+            return;
+        }
+        LicenseAgentClient connected = agent;
+        if (connected != null) {
+            connected.unregister(licenseKey, deviceId);
+        }
+        if (licenses.isEmpty()) {
+            stop();
+        } else {
+            onLicensesChanged();
+        }
+    }
+
+    public boolean isRegistered(String licenseKey) {
+        return licenses.containsKey(licenseKey);
+    }
+
+    public List<String> getLicenseKeys() {
+        return new ArrayList<>(licenses.keySet());
+    }
+
+    public boolean isPushChannelLive() {
+        return pushChannelLive;
+    }
+
+    /** Hủy kích hoạt một license; chỉ gỡ khỏi heartbeat khi server chấp nhận (HTTP 200). */
+    public CompletableFuture<HttpResponse<String>> deactivateAsync(String licenseKey) {
+        return transport.deactivateAsync(licenseKey, deviceId).thenApply(response -> {
+            if (response.statusCode() == 200) {
+                unregister(licenseKey);
+            }
+            return response;
+        });
+    }
+
+    /** Hủy kích hoạt mọi license (khi đóng ứng dụng). */
+    public CompletableFuture<Void> deactivateAllAsync() {
+        List<CompletableFuture<HttpResponse<String>>> requests = new ArrayList<>();
+        for (String licenseKey : getLicenseKeys()) {
+            requests.add(deactivateAsync(licenseKey));
+        }
+        return CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new));
+    }
+
+    /** Dừng heartbeat và đóng WebSocket (hoặc kết nối tới agent). */
+    public synchronized void stop() {
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel();
+            heartbeatTask = null;
+        }
+        LicenseAgentClient connected = agent;
+        agent = null;
+        if (connected != null) {
+            connected.shutdown();
+        }
+        pushChannelLive = false;
+        LicenseWebSocketClient socket = wsClient;
+        wsClient = null;
+        if (socket != null) {
+            socket.shutdown();
+        }
+    }
+
+    private synchronized void startHeartbeat() {
+        if (heartbeatTask != null && !heartbeatTask.isCancelled()) {
+            return;
+        }
+        heartbeatTask = scheduler.scheduleAdaptive(() -> {
+            try {
+                heartbeatOnce();
+            } catch (InterruptedException e) {
+                LOG.debug(() -> "Heartbeat interrupted");
+            } catch (Exception e) {
+                heartbeatBackoff.onFailure(null);
+                LOG.event(Log.Level.WARN, "heartbeat_error", "failures", heartbeatBackoff.getConsecutiveFailures(),
+                        "error", e.toString());
+            }
+            return heartbeatBackoff.nextDelay();
+        }, LicenseScheduler.initialOffset(heartbeatBackoff.nextDelay()));  // lần đầu trải đều trong [0, chu kỳ)
+    }
+
+    /** Một nhịp heartbeat cho mọi license: qua socket nếu đang mở, nếu không thì HTTP. */
+    public void heartbeatOnce() throws Exception {
+        if (licenses.isEmpty() || agent != null) {
+            return;
+        }
+        LicenseWebSocketClient socket = wsClient;
+        if (!LEGACY_HEARTBEAT && pushChannelLive && socket != null && socket.sendHeartbeat()) {
+            heartbeatBackoff.onSuccess(null);
+            LicenseMetrics.shared().counter("license_heartbeats_total", "channel", "ws").increment();
+            return;
+        }
+        sendHttpHeartbeat();
+        LicenseMetrics.shared().counter("license_heartbeats_total", "channel", "http").increment();
+    }
+
+    private void sendHttpHeartbeat() throws Exception {
+        Collection<Registration> current = new ArrayList<>(licenses.values());
+        if (current.size() > 1 && !batchUnsupported) {
+            List<LicenseRequest> requests = new ArrayList<>(current.size());
+            for (Registration registration : current) {
+                requests.add(new LicenseRequest(registration.licenseKey(), deviceId, registration.productName()));
+            }
+            HttpResponse<String> response = transport.post("/heartbeat/batch", LicenseJson.encodeBatch(deviceId, requests));
+            int status = response.statusCode();
+            if (status == 404 || status == 405 || status == 501) {
+                LOG.info("Server has no /heartbeat/batch, falling back to per-license heartbeats");
+                batchUnsupported = true;
+            } else {
+                onHeartbeatResponse(response, current);
+                return;
+            }
+        }
+        // Một license, hoặc server chưa hỗ trợ batch
+        for (Registration registration : current) {
+            onHeartbeatResponse(transport.heartbeat(registration.licenseKey(), deviceId), List.of(registration));
+        }
+    }
+
+    private void onHeartbeatResponse(HttpResponse<String> response, Collection<Registration> covered) {
+        if (response.statusCode() != 200) {
+            heartbeatBackoff.onFailure(HeartbeatBackoff.retryAfter(response));
+            LOG.event(Log.Level.WARN, "heartbeat_failed", "status", response.statusCode(),
+                    "failures", heartbeatBackoff.getConsecutiveFailures(),
+                    "message", LicenseJson.errorMessage(response.body()));
+            return;
+        }
+        long hintSeconds = LicenseJson.readLong(response.body(), "nextHeartbeatSeconds", -1);
+        heartbeatBackoff.onSuccess(hintSeconds > 0 ? Duration.ofSeconds(hintSeconds) : null);
+        Map<String, String> failures = covered.size() > 1 ? LicenseJson.decodeBatchFailures(response.body()) : Map.of();
+        failures.forEach((licenseKey, message) ->
+                LOG.event(Log.Level.WARN, "heartbeat_rejected", "license", licenseKey, "message", message));
+        for (Registration registration : covered) {
+            if (!failures.containsKey(registration.licenseKey())) {
+                onHeartbeatAccepted(registration.licenseKey());
+            }
+        }
+    }
+
+    /**
+     * Server đã nhận heartbeat của license (HTTP, HEARTBEAT_ACK qua WebSocket hoặc qua agent): gia hạn token
+     * offline (touch tự giới hạn một lần ghi mỗi giờ) và báo cho handler HEARTBEAT_ACK (agent chuyển cho client).
+     */
+    private void onHeartbeatAccepted(String licenseKey) {
+        if (persistTokens) {
+            LicenseTokenCache.touch(licenseKey);
+        }
+        if (events.hasSubscribers(PushEventBus.HEARTBEAT_ACK)) {
+            events.publish(new PushMessage(PushEventBus.HEARTBEAT_ACK, null, PushMessage.NO_SEQ, licenseKey));
+        }
+    }
+
+    private synchronized void onLicensesChanged() {
+        if (licenses.isEmpty() || wsEndpoints == null || agent != null) {
+            return;
+        }
+        LicenseWebSocketClient socket = wsClient;
+        if (socket != null) {
+            socket.resubscribe();
+            return;
+        }
+        LicenseWebSocketClient created = LicenseWebSocketClient.create(wsEndpoints, this::getLicenseKeys, deviceId, this);
+        wsClient = created;
+        scheduler.execute(() -> {
+            try {
+                // Chờ kết nối hoàn tất; nếu thất bại, client tự reconnect với backoff
+                created.connectBlocking();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOG.warn("Failed to connect WebSocket", e);
+            }
+        });
+    }
+
+    private synchronized boolean registerWithAgent(String licenseKey, String productName) {
+        if (agent == null) {
+            // Chỉ chuyển sang agent khi tiến trình chưa tự heartbeat, không để license đi hai đường
+            if (agentSocket == null || (heartbeatTask != null && !heartbeatTask.isCancelled())) {
+                return false;
+            }
+            agent = LicenseAgentClient.connect(agentSocket, this::onPush, this::onAgentLost);
+            if (agent == null) {
+                return false;
+            }
+        }
+        return agent.register(licenseKey, deviceId, productName);
+    }
+
+    /** Agent dừng hoặc chết: tự heartbeat và mở WebSocket cho các license còn lại. */
+    private synchronized void onAgentLost() {
+        agent = null;
+        if (!licenses.isEmpty()) {
+            startHeartbeat();
+            onLicensesChanged();
+        }
+    }
+
+    /** WebSocket vừa mở: heartbeat chuyển sang socket, HTTP chỉ còn là dự phòng. */
+    @Override
+    public void onChannelOpen() {
+        pushChannelLive = true;
+    }
+
+    /** WebSocket đóng: quay lại heartbeat HTTP, gửi ngay một nhịp để không hở khoảng trống. */
+    @Override
+    public void onChannelClosed() {
+        boolean wasLive = pushChannelLive;
+        pushChannelLive = false;
+        if (wasLive && !LEGACY_HEARTBEAT && !licenses.isEmpty()) {
+            scheduler.execute(() -> {
+                try {
+                    sendHttpHeartbeat();
+                } catch (Exception e) {
+                    LOG.warn("Fallback heartbeat failed", e);
+                }
+            });
+        }
+    }
+
+    /** Gọi trên luồng socket: chỉ chuyển vào hàng đợi, handler chạy trên luồng worker. */
+    @Override
+    public void onPush(PushMessage message) {
+        String type = message.type();
+        if ("HEARTBEAT".equals(type)) {
+            return;
+        }
+        if (PushEventBus.HEARTBEAT_ACK.equals(type)) {
+            // ACK của WebSocket không ghi licenseKey: phủ mọi license trên kết nối
+            if (message.licenseKey() != null) {
+                if (licenses.containsKey(message.licenseKey())) {
+                    onHeartbeatAccepted(message.licenseKey());
+                }
+            } else {
+                licenses.keySet().forEach(this::onHeartbeatAccepted);
+            }
+            return;
+        }
+        events.publish(message);
+    }
+
+    private void onLockEvent(PushMessage message) {
+        String reason = message.reason() != null ? message.reason() : DEFAULT_LOCK_REASON;
+        LOG.event(Log.Level.WARN, "ws_lock", "seq", message.seq(), "license", message.licenseKey(), "reason", reason);
+        if (message.licenseKey() != null) {
+            lock(message.licenseKey(), reason);
+        } else {
+            // Server cũ không ghi licenseKey: khóa mọi license trên kết nối này
+            for (String licenseKey : getLicenseKeys()) {
+                lock(licenseKey, reason);
+            }
+        }
+    }
+
+    /** CONFIG {"data":{"heartbeatSeconds":N}}: đổi chu kỳ heartbeat mà không chờ response HTTP kế tiếp. */
+    private void onConfigEvent(PushMessage message) {
+        long heartbeatSeconds = LicenseJson.readLong(message.data(), "heartbeatSeconds", -1);
+        if (heartbeatSeconds > 0) {
+            heartbeatBackoff.setServerHint(Duration.ofSeconds(heartbeatSeconds));
+            LOG.event(Log.Level.INFO, "config_heartbeat", "seconds", heartbeatSeconds);
+        }
+    }
+
+    private void lock(String licenseKey, String reason) {
+        Registration registration = licenses.get(licenseKey);
+        if (registration == null) {
+            return;
+        }
+        unregister(licenseKey);
+        if (persistTokens) {
+            LicenseTokenCache.clear(licenseKey);
+        }
+        registration.listener().onLocked(licenseKey, reason);
+    }
+}
@@ -0,0 +1,236 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Registry metric trong tiến trình: counter, gauge và histogram độ trễ kiểu HDR (log-linear,
+ * sai số tương đối ~12%). Tên series theo kiểu Prometheus, nhãn truyền dạng "key", "value", ...
+ */
+public final class LicenseMetrics {
+
+    private static final LicenseMetrics SHARED = new LicenseMetrics();
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public static LicenseMetrics shared() {
+        return SHARED;
+    }
+
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(series(name, labels), key -> new Counter());
+    }
+
+    public void gauge(String name, Supplier<? extends Number> value, String... labels) {
+        gauges.put(series(name, labels), value);
+    }
+
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(series(name, labels), key -> new Histogram());
+    }
+
+    /** Giá trị mọi series counter của một metric, key là tên series đầy đủ (kèm nhãn). */
+    public Map<String, Long> counterValues(String name) {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((series, counter) -> {
+            if (nameOf(series).equals(name)) {
+                values.put(series, counter.get());
+            }
+        });
+        return values;
+    }
+
+    /** Mọi series histogram của một metric, key là tên series đầy đủ (kèm nhãn). */
+    public Map<String, Histogram> histograms(String name) {
+        Map<String, Histogram> values = new TreeMap<>();
+        histograms.forEach((series, histogram) -> {
+            if (nameOf(series).equals(name)) {
+                values.put(series, histogram);
+            }
+        });
+        return values;
+    }
+
+    private static String nameOf(String series) {
+        int brace = series.indexOf('{');
+        return brace < 0 ? series : series.substring(0, brace);
+    }
+
+    static String series(String name, String... labels) {
+        if (labels.length == 0) {
+            return name;
+        }
+        StringBuilder series = new StringBuilder(name).append('{');
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                series.append(',');
+            }
+            series.append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "\\\"")).append('"');
+        }
+        return series.append('}').toString();
+    }
+
+    /** Xuất theo định dạng text của Prometheus (histogram xuất dạng summary có quantile). */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(2048);
+        new TreeMap<>(counters).forEach((series, counter) ->
+                out.append(series).append(' ').append(counter.get()).append('\n'));
+        new TreeMap<>(gauges).forEach((series, gauge) ->
+                out.append(series).append(' ').append(gauge.get()).append('\n'));
+        new TreeMap<>(histograms).forEach((series, histogram) -> {
+            int brace = series.indexOf('{');
+            String name = brace < 0 ? series : series.substring(0, brace);
+            String labels = brace < 0 ? "" : series.substring(brace + 1, series.length() - 1);
+            for (double q : QUANTILES) {
+                out.append(name).append("{").append(labels).append(labels.isEmpty() ? "" : ",")
+                        .append("quantile=\"").append(q).append("\"} ")
+                        .append(histogram.percentileSeconds(q)).append('\n');
+            }
+            String suffix = brace < 0 ? "" : series.substring(brace);
+            out.append(name).append("_sum").append(suffix).append(' ').append(histogram.sumSeconds()).append('\n');
+            out.append(name).append("_count").append(suffix).append(' ').append(histogram.count()).append('\n');
+        });
+        return out.toString();
+    }
+
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("timestamp").value(System.currentTimeMillis());
+        writer.name("counters").beginObject();
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue().get());
+        }
+        writer.endObject();
+        writer.name("gauges").beginObject();
+        for (Map.Entry<String, Supplier<? extends Number>> entry : new TreeMap<>(gauges).entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue().get());
+        }
+        writer.endObject();
+        writer.name("histograms").beginObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            writer.name(entry.getKey()).beginObject();
+            writer.name("count").value(histogram.count());
+            writer.name("maxMs").value(histogram.maxMicros() / 1000.0);
+            for (double q : QUANTILES) {
+                writer.name("p" + String.valueOf(q * 100).replaceAll("\\.0$", "")).value(histogram.percentileMicros(q) / 1000.0);
+            }
+            writer.endObject();
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Histogram độ trễ theo micro giây. Mỗi lũy thừa của 2 chia thành 8 bucket con,
+     * nên ghi nhận chỉ là vài phép tính bit và một lần tăng AtomicLongArray.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_EXPONENT = 40;  // ~12 ngày tính bằng micro giây
+
+        private final AtomicLongArray buckets = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        public void recordNanos(long nanos) {
+            recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        /** Ghi thời gian trôi qua kể từ startNanos (lấy từ System.nanoTime()). */
+        public void recordSince(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        public void recordMicros(long micros) {
+            long value = Math.max(0, micros);
+            buckets.incrementAndGet(indexOf(value));
+            count.increment();
+            sumMicros.add(value);
+            maxMicros.accumulateAndGet(value, Math::max);
+        }
+
+        static int indexOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            int bucket = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+            return Math.min(bucket, (MAX_EXPONENT + 1) * SUB_BUCKETS - 1);
+        }
+
+        /** Cận trên của bucket, dùng làm giá trị đại diện khi tính percentile. */
+        static long upperBoundOf(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int sub = index % SUB_BUCKETS;
+            long base = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+            return base + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long maxMicros() {
+            return maxMicros.get();
+        }
+
+        public double sumSeconds() {
+            return sumMicros.sum() / 1_000_000.0;
+        }
+
+        public long percentileMicros(double quantile) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxMicros.get());
+                }
+            }
+            return maxMicros.get();
+        }
+
+        public double percentileSeconds(double quantile) {
+            return percentileMicros(quantile) / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.hsf;
+
+import java.nio.file.Path;
+
+/**
+ * Thư mục dữ liệu cục bộ của client (mặc định ~/.hsf-license, đổi bằng -Dlicense.home).
+ */
+public final class LicensePaths {
+
+    private LicensePaths() {
+    }
+
+    public static Path home() {
+        String configured = System.getProperty("license.home");
+        if (configured != null && !configured.isBlank()) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("user.home"), ".hsf-license");
+    }
+
+    public static Path resolve(String fileName) {
+        return home().resolve(fileName);
+    }
+}
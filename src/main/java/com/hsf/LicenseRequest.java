@@ -0,0 +1,11 @@
+package com.hsf;
+
+/**
+ * Body của các request /activate, /deactivate, /heartbeat. productName chỉ dùng cho /activate (có thể null).
+ */
+public record LicenseRequest(String licenseKey, String deviceId, String productName) {
+
+    public LicenseRequest(String licenseKey, String deviceId) {
+        this(licenseKey, deviceId, null);
+    }
+}
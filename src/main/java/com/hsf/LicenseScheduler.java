@@ -0,0 +1,151 @@
+package com.hsf;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bộ lập lịch trung tâm cho heartbeat, kết nối WebSocket và reconnect.
+ * Một luồng timer duy nhất chỉ đếm giờ; công việc thật chạy trên virtual thread
+ * nên I/O blocking không làm trễ các tác vụ khác.
+ */
+public class LicenseScheduler {
+
+    private static final Log LOG = Log.get(LicenseScheduler.class);
+
+    private static final LicenseScheduler SHARED = new LicenseScheduler();
+
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+
+    public LicenseScheduler() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "license-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("license-worker-", 0).factory());
+    }
+
+    public static LicenseScheduler shared() {
+        return SHARED;
+    }
+
+    /** Chạy ngay một tác vụ trên virtual thread. */
+    public void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /** Chạy một lần sau khoảng delay. */
+    public Task schedule(Runnable task, Duration delay) {
+        Task handle = new Task();
+        synchronized (handle) {
+            handle.future = timer.schedule(() -> dispatch(handle, task), delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return handle;
+    }
+
+    /**
+     * Chạy lặp lại theo chu kỳ cố định, mỗi lần lệch ngẫu nhiên ±jitter (0..1) của chu kỳ.
+     * Lần đầu được trải đều trong [0, period) để các client khởi động cùng lúc không gửi đồng loạt.
+     */
+    public Task scheduleAtFixedRate(Runnable task, Duration period, double jitter) {
+        long periodMs = period.toMillis();
+        return scheduleAdaptive(() -> {
+            task.run();
+            return Duration.ofMillis(jittered(periodMs, jitter));
+        }, initialOffset(period));
+    }
+
+    /**
+     * Chạy lặp lại, mỗi lần tác vụ tự trả về khoảng chờ tới lần kế tiếp
+     * (tính từ lúc bắt đầu chạy, không phải lúc kết thúc).
+     */
+    public Task scheduleAdaptive(Supplier<Duration> task, Duration initialDelay) {
+        Task handle = new Task();
+        scheduleNext(handle, task, initialDelay.toMillis());
+        return handle;
+    }
+
+    private void scheduleNext(Task handle, Supplier<Duration> task, long delayMs) {
+        synchronized (handle) {
+            if (handle.cancelled) {
+                return;
+            }
+            handle.future = timer.schedule(() -> dispatch(handle, () -> {
+                long started = System.nanoTime();
+                Duration next = null;
+                try {
+                    next = task.get();
+                } finally {
+                    // Trừ thời gian chạy để giữ nhịp cố định thay vì trôi dần theo độ trễ request
+                    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                    long nextMs = next != null ? next.toMillis() : delayMs;
+                    scheduleNext(handle, task, Math.max(0, nextMs - elapsedMs));
+                }
+            }), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void dispatch(Task handle, Runnable task) {
+        if (handle.cancelled) {
+            return;
+        }
+        workers.execute(() -> {
+            synchronized (handle) {
+                if (handle.cancelled) {
+                    return;
+                }
+                handle.runner = Thread.currentThread();
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Scheduled task failed", e);
+            } finally {
+                synchronized (handle) {
+                    handle.runner = null;
+                }
+            }
+        });
+    }
+
+    /** Độ lệch ngẫu nhiên trong [0, period) cho lần chạy đầu của tác vụ lặp. */
+    static Duration initialOffset(Duration period) {
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(Math.max(1, period.toMillis())));
+    }
+
+    static long jittered(long periodMs, double jitter) {
+        if (jitter <= 0) {
+            return periodMs;
+        }
+        long spread = (long) (periodMs * jitter);
+        return Math.max(0, periodMs + ThreadLocalRandom.current().nextLong(-spread, spread + 1));
+    }
+
+    /** Handle để hủy một tác vụ đã lập lịch (kể cả khi đang chạy). */
+    public static class Task {
+        private ScheduledFuture<?> future;
+        private Thread runner;
+        private volatile boolean cancelled;
+
+        public synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Lưu lần kích hoạt thành công gần nhất (license-token.json trong LicensePaths) để lần khởi động sau
+ * vào thẳng màn hình chính và xác thực lại trong nền.
+ * <p>
+ * Chữ ký HMAC của file chỉ phát hiện file hỏng hoặc sửa nhầm: khóa suy ra được từ dữ liệu trên máy nên
+ * người dùng cố ý vẫn sửa và ký lại được. Chống sửa/chép thật sự dựa vào token server ký: khi jar có
+ * khóa công khai của server ({@value #PUBLIC_KEY_RESOURCE}, Ed25519, X.509 base64), chỉ token trong
+ * trường "token" của /activate có chữ ký hợp lệ, đúng license và đúng device id hiện tại mới được dùng
+ * offline, và không quá hạn exp server đặt. Token server có dạng base64url(payload JSON).base64url(chữ ký
+ * Ed25519 trên phần đầu), payload gồm licenseKey, deviceId, productName, iat, exp (mili giây epoch).
+ */
+public final class LicenseTokenCache {
+
+    private static final Log LOG = Log.get(LicenseTokenCache.class);
+
+    private static final String CACHE_FILE = "license-token.json";
+    // Thời gian tối đa được dùng token khi không liên lạc được server (-Dlicense.offline.graceHours)
+    private static final Duration GRACE_PERIOD = Duration.ofHours(Long.getLong("license.offline.graceHours", 72));
+    // Không ghi lại file quá một lần mỗi giờ khi heartbeat thành công
+    private static final Duration TOUCH_INTERVAL = Duration.ofHours(1);
+    // Lệch đồng hồ tối đa được chấp nhận cho thời điểm ghi trong token (tránh validatedAt ở tương lai)
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+    static final String PUBLIC_KEY_RESOURCE = "license-token-public-key.txt";
+    // Jar kèm khóa server: bắt buộc token server hợp lệ (khóa hỏng thì từ chối mọi token, không nới lỏng)
+    private static final boolean SERVER_KEY_BUNDLED = LicenseTokenCache.class.getResource(PUBLIC_KEY_RESOURCE) != null;
+    private static final PublicKey SERVER_KEY = SERVER_KEY_BUNDLED ? loadServerKey() : null;
+
+    // Chỉ đọc/ghi khi giữ khóa của class
+    private static String touchedKey;
+    private static long touchNotBefore;
+
+    private LicenseTokenCache() {
+    }
+
+    /** Token đã lưu: license, sản phẩm, thời điểm xác thực cuối và token gốc của server (có thể null). */
+    public record CachedToken(String licenseKey, String deviceId, String productName,
+                              long validatedAt, String serverToken) {
+
+        public boolean isWithinGracePeriod() {
+            long now = System.currentTimeMillis();
+            return validatedAt <= now + CLOCK_SKEW.toMillis() && now - validatedAt <= GRACE_PERIOD.toMillis();
+        }
+    }
+
+    /** Nội dung token do server ký. */
+    public record ServerClaims(String licenseKey, String deviceId, String productName, long issuedAt, long expiresAt) {
+    }
+
+    public static synchronized void save(String licenseKey, String productName, String activationResponse) {
+        String serverToken = LicenseJson.readString(activationResponse, "token");
+        write(new CachedToken(licenseKey, DeviceIdentity.get(), productName, System.currentTimeMillis(), serverToken));
+    }
+
+    /** Gia hạn thời điểm xác thực sau một heartbeat thành công. */
+    public static synchronized void touch(String licenseKey) {
+        long now = System.currentTimeMillis();
+        // ACK đến mỗi chu kỳ heartbeat: trong giờ kể từ lần xác thực cuối không cần đọc lại file
+        if (licenseKey.equals(touchedKey) && now < touchNotBefore) {
+            return;
+        }
+        CachedToken token = read();
+        if (token == null || !token.licenseKey().equals(licenseKey)) {
+            return;
+        }
+        touchedKey = licenseKey;
+        if (now - token.validatedAt() < TOUCH_INTERVAL.toMillis()) {
+            touchNotBefore = token.validatedAt() + TOUCH_INTERVAL.toMillis();
+            return;
+        }
+        write(new CachedToken(token.licenseKey(), token.deviceId(), token.productName(), now, token.serverToken()));
+        touchNotBefore = now + TOUCH_INTERVAL.toMillis();
+    }
+
+    /** Token hợp lệ cho máy này và còn trong thời gian ân hạn, hoặc null. */
+    public static synchronized CachedToken loadValid() {
+        CachedToken token = read();
+        if (token == null) {
+            return null;
+        }
+        if (!DeviceIdentity.get().equals(token.deviceId()) || !token.isWithinGracePeriod()) {
+            return null;
+        }
+        if (SERVER_KEY_BUNDLED && !isServerTokenValid(token)) {
+            return null;
+        }
+        return token;
+    }
+
+    public static synchronized void clear() {
+        touchedKey = null;
+        try {
+            Files.deleteIfExists(file());
+        } catch (IOException e) {
+            LOG.warn("Cannot delete license token cache", e);
+        }
+    }
+
+    /** Chỉ xóa khi token đang lưu thuộc về licenseKey (các license khác trong tiến trình không ảnh hưởng). */
+    public static synchronized void clear(String licenseKey) {
+        CachedToken token = read();
+        if (token != null && token.licenseKey().equals(licenseKey)) {
+            clear();
+        }
+    }
+
+    private static CachedToken read() {
+        Path file = file();
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            JsonObject json = LicenseJson.gson().fromJson(Files.readString(file, StandardCharsets.UTF_8), JsonObject.class);
+            CachedToken token = new CachedToken(
+                    json.get("licenseKey").getAsString(),
+                    json.get("deviceId").getAsString(),
+                    json.get("productName").getAsString(),
+                    json.get("validatedAt").getAsLong(),
+                    json.has("serverToken") ? json.get("serverToken").getAsString() : null);
+            String signature = json.get("signature").getAsString();
+            if (!MessageDigest.isEqual(sign(token).getBytes(StandardCharsets.UTF_8),
+                    signature.getBytes(StandardCharsets.UTF_8))) {
+                LOG.warn("License token signature mismatch, ignoring cache");
+                return null;
+            }
+            return token;
+        } catch (Exception e) {
+            LOG.warn("Cannot read license token cache", e);
+            return null;
+        }
+    }
+
+    private static void write(CachedToken token) {
+        JsonObject json = new JsonObject();
+        json.addProperty("licenseKey", token.licenseKey());
+        json.addProperty("deviceId", token.deviceId());
+        json.addProperty("productName", token.productName());
+        json.addProperty("validatedAt", token.validatedAt());
+        if (token.serverToken() != null) {
+            json.addProperty("serverToken", token.serverToken());
+        }
+        json.addProperty("signature", sign(token));
+        Path file = file();
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), CACHE_FILE, ".tmp");
+            Files.writeString(tmp, LicenseJson.gson().toJson(json), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Cannot write license token cache", e);
+        }
+    }
+
+    private static String sign(CachedToken token) {
+        String payload = token.licenseKey() + "\n" + token.deviceId() + "\n" + token.productName() + "\n"
+                + token.validatedAt() + "\n" + (token.serverToken() == null ? "" : token.serverToken());
+        try {
+            byte[] key = MessageDigest.getInstance("SHA-256")
+                    .digest(("hsf-license-token|" + DeviceIdentity.get()).getBytes(StandardCharsets.UTF_8));
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static boolean isServerTokenValid(CachedToken token) {
+        ServerClaims claims = verify(token.serverToken(), SERVER_KEY);
+        long now = System.currentTimeMillis();
+        if (claims == null || !claims.licenseKey().equals(token.licenseKey())
+                || !DeviceIdentity.get().equals(claims.deviceId())) {
+            LOG.warn("Server license token missing or not issued for this device, ignoring cache");
+            return false;
+        }
+        return claims.issuedAt() <= now + CLOCK_SKEW.toMillis() && now <= claims.expiresAt();
+    }
+
+    /** Kiểm tra chữ ký và đọc payload của token server; null nếu sai định dạng hoặc sai chữ ký. */
+    static ServerClaims verify(String serverToken, PublicKey key) {
+        if (serverToken == null || key == null) {
+            return null;
+        }
+        int dot = serverToken.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            Base64.Decoder base64 = Base64.getUrlDecoder();
+            Signature verifier = Signature.getInstance("Ed25519");
+            verifier.initVerify(key);
+            verifier.update(serverToken.substring(0, dot).getBytes(StandardCharsets.US_ASCII));
+            if (!verifier.verify(base64.decode(serverToken.substring(dot + 1)))) {
+                return null;
+            }
+            JsonObject payload = LicenseJson.gson().fromJson(
+                    new String(base64.decode(serverToken.substring(0, dot)), StandardCharsets.UTF_8), JsonObject.class);
+            return new ServerClaims(
+                    payload.get("licenseKey").getAsString(),
+                    payload.get("deviceId").getAsString(),
+                    payload.has("productName") ? payload.get("productName").getAsString() : null,
+                    payload.get("iat").getAsLong(),
+                    payload.get("exp").getAsLong());
+        } catch (Exception e) {
+            LOG.debug(() -> "Invalid server license token: " + e);
+            return null;
+        }
+    }
+
+    private static PublicKey loadServerKey() {
+        try (InputStream in = LicenseTokenCache.class.getResourceAsStream(PUBLIC_KEY_RESOURCE)) {
+            byte[] encoded = Base64.getDecoder().decode(new String(in.readAllBytes(), StandardCharsets.US_ASCII).strip());
+            return KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (Exception e) {
+            LOG.warn("Invalid " + PUBLIC_KEY_RESOURCE + ", offline tokens will be rejected", e);
+            return null;
+        }
+    }
+
+    private static Path file() {
+        return LicensePaths.resolve(CACHE_FILE);
+    }
+}
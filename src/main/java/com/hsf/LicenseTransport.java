@@ -0,0 +1,241 @@
+package com.hsf;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tầng HTTP dùng chung cho các API license (/activate, /deactivate, /heartbeat).
+ * Một HttpClient duy nhất được tái sử dụng để giữ kết nối keep-alive giữa các request.
+ * Server được chọn qua {@link EndpointSelector}: lỗi mạng hoặc 5xx thì gửi lại sang endpoint kế tiếp (tối đa
+ * maxAttempts endpoint). Heartbeat có thể gửi song song (hedge) sang endpoint thứ hai khi endpoint đầu chưa
+ * trả lời sau hedgeDelay; response nào về trước được dùng, request còn lại bị hủy.
+ */
+public class LicenseTransport {
+
+    public static final String DEFAULT_SERVER_URL = "http://localhost:8080/api/license";
+
+    private static volatile LicenseTransport shared;
+
+    private final EndpointSelector endpoints;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final int maxAttempts;
+    private final Duration hedgeDelay;
+
+    public LicenseTransport(String serverUrl, HttpClient.Version version, Executor executor,
+                            Duration connectTimeout, Duration requestTimeout) {
+        this(EndpointSelector.of(serverUrl), version, executor, connectTimeout, requestTimeout, 1, Duration.ZERO);
+    }
+
+    /**
+     * @param maxAttempts số endpoint tối đa thử cho một request (1 = không chuyển endpoint)
+     * @param hedgeDelay  chờ bao lâu trước khi gửi heartbeat song song sang endpoint kế tiếp (ZERO = tắt)
+     */
+    public LicenseTransport(EndpointSelector endpoints, HttpClient.Version version, Executor executor,
+                            Duration connectTimeout, Duration requestTimeout, int maxAttempts, Duration hedgeDelay) {
+        this.endpoints = endpoints;
+        this.requestTimeout = requestTimeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.hedgeDelay = hedgeDelay;
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.httpClient = builder.build();
+    }
+
+    /**
+     * Instance dùng chung cho toàn bộ ứng dụng, cấu hình qua system properties:
+     * license.servers (danh sách URL cách nhau bằng dấu phẩy) hoặc license.server.url, license.http.version
+     * (HTTP_1_1 | HTTP_2), license.http.connectTimeoutMs, license.http.requestTimeoutMs,
+     * license.http.maxAttempts (2), license.http.hedgeDelayMs (0 = không hedge).
+     */
+    public static LicenseTransport shared() {
+        LicenseTransport result = shared;
+        if (result == null) {
+            synchronized (LicenseTransport.class) {
+                result = shared;
+                if (result == null) {
+                    HttpClient.Version version = HttpClient.Version.valueOf(
+                            System.getProperty("license.http.version", HttpClient.Version.HTTP_1_1.name()));
+                    result = new LicenseTransport(
+                            EndpointSelector.fromSystemProperties("license.servers", "license.server.url", DEFAULT_SERVER_URL),
+                            version, null,
+                            Duration.ofMillis(Long.getLong("license.http.connectTimeoutMs", 3000)),
+                            Duration.ofMillis(Long.getLong("license.http.requestTimeoutMs", 5000)),
+                            Integer.getInteger("license.http.maxAttempts", 2),
+                            Duration.ofMillis(Long.getLong("license.http.hedgeDelayMs", 0)));
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public HttpResponse<String> activate(String licenseKey, String deviceId, String productName) throws Exception {
+        return post("/activate", LicenseJson.encode(new LicenseRequest(licenseKey, deviceId, productName)));
+    }
+
+    public HttpResponse<String> deactivate(String licenseKey, String deviceId) throws Exception {
+        return post("/deactivate", LicenseJson.encode(new LicenseRequest(licenseKey, deviceId)));
+    }
+
+    public HttpResponse<String> heartbeat(String licenseKey, String deviceId) throws Exception {
+        return post("/heartbeat", LicenseJson.encode(new LicenseRequest(licenseKey, deviceId)));
+    }
+
+    public CompletableFuture<HttpResponse<String>> activateAsync(String licenseKey, String deviceId, String productName) {
+        return postAsync("/activate", LicenseJson.encode(new LicenseRequest(licenseKey, deviceId, productName)));
+    }
+
+    public CompletableFuture<HttpResponse<String>> deactivateAsync(String licenseKey, String deviceId) {
+        return postAsync("/deactivate", LicenseJson.encode(new LicenseRequest(licenseKey, deviceId)));
+    }
+
+    public HttpResponse<String> post(String path, String jsonBody) throws Exception {
+        CompletableFuture<HttpResponse<String>> future = postAsync(path, jsonBody);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * Gửi không chặn luồng gọi. Hủy future trả về (cancel(true)) sẽ hủy luôn request HTTP đang chạy.
+     */
+    public CompletableFuture<HttpResponse<String>> postAsync(String path, String jsonBody) {
+        boolean hedge = !hedgeDelay.isZero() && path.startsWith("/heartbeat");
+        return new Call(path, jsonBody, endpoints.candidates(maxAttempts), hedge).start();
+    }
+
+    /** Một request qua các endpoint ứng viên; mọi lần gửi đều chạy trên luồng của HttpClient. */
+    private final class Call {
+        private final String path;
+        private final String jsonBody;
+        private final List<EndpointSelector.Endpoint> candidates;
+        private final boolean hedge;
+        private final CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        private final Set<CompletableFuture<HttpResponse<String>>> inFlight = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile HttpResponse<String> lastResponse;
+        private volatile Throwable lastError;
+
+        Call(String path, String jsonBody, List<EndpointSelector.Endpoint> candidates, boolean hedge) {
+            this.path = path;
+            this.jsonBody = jsonBody;
+            this.candidates = candidates;
+            this.hedge = hedge;
+        }
+
+        CompletableFuture<HttpResponse<String>> start() {
+            result.whenComplete((response, error) -> inFlight.forEach(attempt -> attempt.cancel(true)));
+            launch(false);
+            return result;
+        }
+
+        private boolean launch(boolean hedged) {
+            int index = next.getAndIncrement();
+            if (index >= candidates.size() || result.isDone()) {
+                return false;
+            }
+            EndpointSelector.Endpoint endpoint = candidates.get(index);
+            if (index > 0) {
+                LicenseMetrics.shared().counter(hedged ? "license_http_hedged_total" : "license_http_failover_total",
+                        "endpoint", path).increment();
+            }
+            running.incrementAndGet();
+            long started = System.nanoTime();
+            CompletableFuture<HttpResponse<String>> attempt =
+                    httpClient.sendAsync(buildRequest(endpoint, path, jsonBody), HttpResponse.BodyHandlers.ofString());
+            inFlight.add(attempt);
+            attempt.whenComplete((response, error) -> onAttempt(endpoint, started, attempt, response, error));
+            if (hedge && index + 1 < candidates.size()) {
+                CompletableFuture.delayedExecutor(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                    if (!result.isDone() && next.get() == index + 1) {
+                        launch(true);
+                    }
+                });
+            }
+            return true;
+        }
+
+        private void onAttempt(EndpointSelector.Endpoint endpoint, long started, CompletableFuture<HttpResponse<String>> attempt,
+                               HttpResponse<String> response, Throwable error) {
+            inFlight.remove(attempt);
+            if (result.isDone() && (error instanceof CancellationException || error == null)) {
+                running.decrementAndGet();
+                return;  // Lần gửi thua cuộc khi hedge, không tính là lỗi của endpoint
+            }
+            record(path, started, response, error);
+            if (response != null && response.statusCode() < 500) {
+                endpoints.onSuccess(endpoint, System.nanoTime() - started);
+                running.decrementAndGet();
+                result.complete(response);
+                return;
+            }
+            endpoints.onFailure(endpoint);
+            if (response != null) {
+                lastResponse = response;
+            } else {
+                lastError = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            }
+            boolean retried = launch(false);
+            if (running.decrementAndGet() == 0 && !retried) {
+                // Hết endpoint: trả về response 5xx cuối cùng (để caller đọc Retry-After) hoặc lỗi cuối cùng
+                HttpResponse<String> last = lastResponse;
+                if (last != null) {
+                    result.complete(last);
+                } else {
+                    result.completeExceptionally(lastError);
+                }
+            }
+        }
+    }
+
+    private HttpRequest buildRequest(EndpointSelector.Endpoint endpoint, String path, String jsonBody) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(endpoint.url() + path))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .build();
+    }
+
+    private void record(String path, long started, HttpResponse<String> response, Throwable error) {
+        LicenseMetrics metrics = LicenseMetrics.shared();
+        metrics.histogram("license_http_latency_seconds", "endpoint", path).recordSince(started);
+        String status = response != null ? Integer.toString(response.statusCode())
+                : (error instanceof CompletionException && error.getCause() != null ? error.getCause() : error)
+                        .getClass().getSimpleName();
+        metrics.counter("license_http_requests_total", "endpoint", path, "status", status).increment();
+    }
+
+    /** Endpoint sẽ nhận request kế tiếp. */
+    public String getServerUrl() {
+        return endpoints.getPreferred().url();
+    }
+
+    public EndpointSelector getEndpoints() {
+        return endpoints;
+    }
+}
@@ -1,129 +1,379 @@
 package com.hsf;
 
 import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+/**
+ * Một kết nối /ws/license dùng chung cho mọi license của tiến trình. Message được giao cho
+ * {@link Listener}; class này không phụ thuộc JavaFX.
+ * Khi bắt tay, client đề nghị permessage-deflate (-Dlicense.ws.deflate) và subprotocol nhị phân
+ * {@link PushBinaryCodec#PROTOCOL} (-Dlicense.ws.binary); server không hỗ trợ thì vẫn là JSON text.
+ * Mỗi lần kết nối lại chọn server qua {@link EndpointSelector}; nếu lần trước lỗi thì thử endpoint khác.
+ */
+public class LicenseWebSocketClient extends WebSocketClient {
 
-import javafx.application.Platform;
-import javafx.scene.control.Alert;
+    private static final Log LOG = Log.get(LicenseWebSocketClient.class);
 
-public class LicenseWebSocketClient extends WebSocketClient {
-    
-    private Controller controller;
-    private MainController mainController;
+    private static final Duration RECONNECT_BASE_DELAY = Duration.ofSeconds(1);
+    private static final Duration RECONNECT_MAX_DELAY = Duration.ofSeconds(60);
+    // Khi hết lượt reconnect đồng thời thì chờ thêm khoảng này rồi thử lại
+    private static final Duration RECONNECT_PERMIT_RETRY = Duration.ofMillis(500);
+    // Giới hạn số lần reconnect chạy cùng lúc trong tiến trình
+    private static final Semaphore RECONNECT_PERMITS =
+            new Semaphore(Integer.getInteger("license.ws.maxConcurrentReconnects", 2));
+    private static final int CLOSE_POLICY_VIOLATION = 1008;
+    // Đóng chủ động để mở lại với danh sách license mới
+    private static final int CLOSE_RESUBSCRIBE = 4000;
+    private static final String HEARTBEAT_MESSAGE = "{\"type\":\"HEARTBEAT\"}";
+    // Header bắt tay: định danh dãy seq của server, đổi khi server khởi động lại
+    static final String EPOCH_HEADER = "X-License-Epoch";
+    // Ping/pong ở tầng WebSocket để phát hiện kết nối chết (giây)
+    private static final int CONNECTION_LOST_TIMEOUT = 30;
+    private static final boolean OFFER_DEFLATE = Boolean.parseBoolean(System.getProperty("license.ws.deflate", "true"));
+    private static final boolean OFFER_BINARY = Boolean.parseBoolean(System.getProperty("license.ws.binary", "true"));
     
-    public LicenseWebSocketClient(String serverUrl, String licenseKey, String deviceId, Controller controller) throws Exception {
-        super(new URI(serverUrl + "/ws/license?licenseKey=" + licenseKey + "&deviceId=" + deviceId));
-        this.controller = controller;
-        String fullUrl = serverUrl + "/ws/license?licenseKey=" + licenseKey + "&deviceId=" + deviceId;
-        System.out.println("WebSocket connecting to: " + fullUrl);
-        
+    /** Trạng thái của vòng đời kết nối / reconnect. */
+    public enum State { CONNECTING, OPEN, BACKOFF, CLOSED }
+
+    /** Nhận sự kiện kết nối và message đã giải mã (đã lọc seq trùng). */
+    public interface Listener {
+        void onChannelOpen();
+
+        void onChannelClosed();
+
+        void onPush(PushMessage message);
+    }
+
+    private final Listener listener;
+    private final EndpointSelector endpoints;
+    private final Supplier<Collection<String>> licenseKeys;
+    private final String deviceId;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CONNECTING);
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    // seq của message cuối cùng đã nhận, gửi lại khi reconnect để server phát lại message bị lỡ
+    private final AtomicLong lastSeq = new AtomicLong(-1);
+    // Epoch của server đã đánh số lastSeq (null nếu server không gửi)
+    private volatile String serverEpoch;
+    // Message có seq đầu tiên của kết nối này chưa tới
+    private volatile boolean firstSeqOnConnection;
+    private volatile EndpointSelector.Endpoint endpoint;
+    // Lúc bắt đầu bắt tay, để đo độ trễ của endpoint
+    private volatile long connectStarted;
+    private volatile boolean lastAttemptFailed;
+    // Các license có trong URI của lần kết nối hiện tại
+    private volatile Set<String> subscribedKeys;
+
+    private LicenseWebSocketClient(EndpointSelector endpoints, EndpointSelector.Endpoint endpoint, Set<String> keys,
+                                   Supplier<Collection<String>> licenseKeys, String deviceId, Listener listener) {
+        super(buildUri(endpoint.url(), keys, deviceId, -1, null), draft(OFFER_DEFLATE, OFFER_BINARY));
+        this.subscribedKeys = keys;
+        this.listener = listener;
+        this.endpoints = endpoints;
+        this.endpoint = endpoint;
+        this.licenseKeys = licenseKeys;
+        this.deviceId = deviceId;
+        this.connectStarted = System.nanoTime();
+    }
+
+    public static LicenseWebSocketClient create(String serverUrl, Supplier<Collection<String>> licenseKeys,
+                                                String deviceId, Listener listener) {
+        return create(EndpointSelector.of(serverUrl), licenseKeys, deviceId, listener);
+    }
+
+    /** Client chưa kết nối (gọi connect/connectBlocking), đã cấu hình header và ping/pong. */
+    public static LicenseWebSocketClient create(EndpointSelector endpoints, Supplier<Collection<String>> licenseKeys,
+                                                String deviceId, Listener listener) {
+        LicenseWebSocketClient client = new LicenseWebSocketClient(endpoints, endpoints.pick(),
+                Set.copyOf(licenseKeys.get()), licenseKeys, deviceId, listener);
+        LOG.debug(() -> "WebSocket connecting to: " + client.getURI());
+
         // Thêm headers để tránh redirect
-        this.addHeader("Origin", "http://localhost");
+        client.addHeader("Origin", "http://localhost");
+        client.setConnectionLostTimeout(CONNECTION_LOST_TIMEOUT);
+        return client;
     }
     
-    public void setMainController(MainController mainController) {
-        this.mainController = mainController;
-        System.out.println("MainController set in WebSocket client");
+    /**
+     * Một license: licenseKey=... như trước; nhiều license: licenseKeys=a,b,c trên cùng một kết nối.
+     * lastSeq kèm epoch của server đã đánh số nó, để server khác epoch bỏ qua lastSeq và phát lại hết.
+     */
+    static URI buildUri(String serverUrl, Collection<String> licenseKeys, String deviceId, long lastSeq, String epoch) {
+        StringBuilder url = new StringBuilder(serverUrl).append("/ws/license?");
+        if (licenseKeys.size() == 1) {
+            url.append("licenseKey=").append(URLEncoder.encode(licenseKeys.iterator().next(), StandardCharsets.UTF_8));
+        } else {
+            url.append("licenseKeys=").append(licenseKeys.stream()
+                    .map(key -> URLEncoder.encode(key, StandardCharsets.UTF_8))
+                    .collect(Collectors.joining(",")));
+        }
+        url.append("&deviceId=").append(URLEncoder.encode(deviceId, StandardCharsets.UTF_8));
+        if (lastSeq >= 0) {
+            url.append("&lastSeq=").append(lastSeq);
+            if (epoch != null) {
+                url.append("&epoch=").append(URLEncoder.encode(epoch, StandardCharsets.UTF_8));
+            }
+        }
+        return URI.create(url.toString());
+    }
+
+    /**
+     * RFC 6455 kèm các đề nghị khi bắt tay. Protocol rỗng và extension mặc định (Draft_6455 tự thêm)
+     * giữ tương thích với server chỉ nói JSON text không nén.
+     */
+    static Draft draft(boolean deflate, boolean binary) {
+        List<IExtension> extensions = new ArrayList<>();
+        if (deflate) {
+            extensions.add(new PerMessageDeflateExtension());
+        }
+        List<IProtocol> protocols = new ArrayList<>();
+        if (binary) {
+            protocols.add(new Protocol(PushBinaryCodec.PROTOCOL));
+        }
+        protocols.add(new Protocol(""));
+        return new Draft_6455(extensions, protocols);
     }
 
     @Override
     public void onOpen(ServerHandshake handshakedata) {
+        LicenseMetrics.shared().counter("license_ws_events_total", "event", "open").increment();
+        endpoints.onSuccess(endpoint, System.nanoTime() - connectStarted);
+        lastAttemptFailed = false;
+        Draft_6455 negotiated = (Draft_6455) getConnection().getDraft();
+        LOG.event(Log.Level.INFO, "ws_open", "status", handshakedata.getHttpStatus(),
+                "attempts", reconnectAttempts.get(), "endpoint", endpoint, "extension", negotiated.getExtension(),
+                "protocol", negotiated.getProtocol());
 
-        System.out.println("WebSocket CONNECTION OPENED");
-        System.out.println("HTTP Status: " + handshakedata.getHttpStatus());
-        System.out.println("HTTP Status Message: " + handshakedata.getHttpStatusMessage());
+        String epoch = handshakedata.getFieldValue(EPOCH_HEADER);
+        if (epoch.isEmpty()) {
+            serverEpoch = null;  // server không gửi epoch: acceptSeq tự nhận biết việc đánh số lại
+        } else if (!epoch.equals(serverEpoch)) {
+            if (serverEpoch != null) {
+                // Server khởi động lại (hoặc endpoint khác): seq đánh lại từ đầu
+                LOG.event(Log.Level.INFO, "ws_epoch_changed", "lastSeq", lastSeq.get());
+                lastSeq.set(-1);
+            }
+            serverEpoch = epoch;
+        }
+        firstSeqOnConnection = true;
+        state.set(State.OPEN);
+        reconnectAttempts.set(0);
+        if (!subscribedKeys.equals(Set.copyOf(licenseKeys.get()))) {
+            // License đăng ký/hủy trong lúc đang bắt tay: URI đã cũ, mở lại với danh sách hiện tại
+            LOG.debug(() -> "License set changed while connecting, resubscribing");
+            close(CLOSE_RESUBSCRIBE, "resubscribe");
+            return;
+        }
+        listener.onChannelOpen();
+    }
 
+    /** Gửi heartbeat qua socket; trả về false nếu socket không còn mở để caller dùng HTTP. */
+    public boolean sendHeartbeat() {
+        if (!isOpen()) {
+            return false;
+        }
+        try {
+            send(HEARTBEAT_MESSAGE);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
     }
 
     @Override
     public void onMessage(String message) {
+        long started = System.nanoTime();
+        LOG.trace(() -> "Raw message: " + message);
 
-        System.out.println("WebSocket MESSAGE RECEIVED");
-        System.out.println("Raw message: " + message);
-        System.out.println("Message length: " + message.length());
+        PushMessage push = LicenseJson.decodePush(message);
+        if (push == null) {
+            LicenseMetrics.shared().counter("license_ws_messages_total", "type", "invalid").increment();
+            LOG.warn("Error parsing message (" + message.length() + " chars)");
+            return;
+        }
+        dispatch(push, started);
+    }
 
-        
-        try {
-            JsonObject json = JsonParser.parseString(message).getAsJsonObject();
-            System.out.println("Parsed JSON: " + json);
-            
-            if (json.has("type")) {
-                String type = json.get("type").getAsString();
-                System.out.println("Message type: " + type);
-                
-                if ("LOCK".equals(type)) {
-                    String reason = json.has("reason") ? json.get("reason").getAsString() : "License has been revoked";
-                    System.out.println("LOCK message detected! Reason: " + reason);
-                    handleLicenseLock(reason);
-                } else {
-                    System.out.println("Unknown message type: " + type);
-                }
-            } else {
-                System.out.println("Message has no 'type' field");
-            }
-        } catch (Exception e) {
-            System.err.println("Error parsing message:");
-            e.printStackTrace();
+    /** Frame nhị phân theo {@link PushBinaryCodec} (server chọn subprotocol nhị phân). */
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        long started = System.nanoTime();
+        PushMessage push = PushBinaryCodec.decode(bytes);
+        if (push == null) {
+            LicenseMetrics.shared().counter("license_ws_messages_total", "type", "invalid").increment();
+            LOG.warn("Error decoding binary message (" + bytes.remaining() + " bytes)");
+            return;
+        }
+        dispatch(push, started);
+    }
+
+    private void dispatch(PushMessage push, long started) {
+
+        // Bỏ qua message đã xử lý (server phát lại từ lastSeq khi reconnect)
+        if (push.hasSeq() && !acceptSeq(push.seq())) {
+            LOG.debug(() -> "Duplicate message seq=" + push.seq() + ", skipped");
+            return;
+        }
+
+        String type = push.type();
+        LicenseMetrics.shared().counter("license_ws_messages_total", "type", String.valueOf(type)).increment();
+        if (type == null) {
+            LOG.debug(() -> "Message has no 'type' field");
+            return;
         }
+
+        listener.onPush(push);
+        LicenseMetrics.shared().histogram("license_ws_dispatch_seconds").recordSince(started);
     }
 
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        System.err.println("=== WebSocket CLOSED ===");
-        System.err.println("Code: " + code);
-        System.err.println("Reason: " + reason);
-        System.err.println("Remote closed: " + remote);
-        
-        // Nếu bị đóng bất thường, thử kết nối lại
-        if (code != 1000 && !remote) { // 1000 = normal closure
-            System.err.println("Abnormal closure detected, attempting reconnect...");
-            try {
-                Thread.sleep(2000);
-                this.reconnect();
-            } catch (Exception e) {
-                System.err.println("Reconnect failed: " + e.getMessage());
+        LOG.event(Log.Level.INFO, "ws_close", "code", code, "reason", reason, "remote", remote);
+        LicenseMetrics.shared().counter("license_ws_events_total", "event", "close").increment();
+        listener.onChannelClosed();
+
+        if (state.get() == State.CLOSED) {
+            return;  // shutdown() chủ động: không reconnect
+        }
+        if (state.get() == State.CONNECTING || code == CloseFrame.ABNORMAL_CLOSE) {
+            // Không bắt tay được hoặc kết nối chết giữa chừng: tính lỗi cho endpoint này
+            endpoints.onFailure(endpoint);
+            lastAttemptFailed = true;
+        }
+        if (remote && code == CLOSE_POLICY_VIOLATION) {
+            LOG.warn("Server rejected the session, not reconnecting");
+            state.set(State.CLOSED);
+            return;
+        }
+        // Mọi trường hợp còn lại (kể cả server restart / đóng từ phía server) đều reconnect
+        scheduleReconnect();
+    }
+
+    private boolean acceptSeq(long seq) {
+        if (firstSeqOnConnection) {
+            firstSeqOnConnection = false;
+            // Server có resume chỉ phát lại seq > lastSeq; seq đầu tiên không lớn hơn nghĩa là server
+            // (không gửi epoch) đã đánh số lại từ đầu. Có epoch thì onOpen đã xử lý việc đánh số lại.
+            long previous = lastSeq.get();
+            if (serverEpoch == null && previous >= 0 && seq <= previous) {
+                LOG.event(Log.Level.INFO, "ws_seq_reset", "lastSeq", previous, "seq", seq);
+                lastSeq.set(seq);
+                return true;
             }
         }
+        long previous;
+        do {
+            previous = lastSeq.get();
+            if (seq <= previous) {
+                return false;
+            }
+        } while (!lastSeq.compareAndSet(previous, seq));
+        return true;
+    }
+
+    private void scheduleReconnect() {
+        State previous = state.get();
+        if (previous == State.CLOSED || previous == State.BACKOFF
+                || !state.compareAndSet(previous, State.BACKOFF)) {
+            return;  // Đã có một lần reconnect đang chờ
+        }
+        Duration delay = nextReconnectDelay(reconnectAttempts.getAndIncrement());
+        LicenseMetrics.shared().counter("license_ws_events_total", "event", "reconnect").increment();
+        LOG.event(Log.Level.INFO, "ws_reconnect_scheduled", "delayMs", delay.toMillis(),
+                "attempt", reconnectAttempts.get());
+        LicenseScheduler.shared().schedule(this::attemptReconnect, delay);
+    }
+
+    static Duration nextReconnectDelay(int attempt) {
+        long capMs = Math.min(RECONNECT_MAX_DELAY.toMillis(),
+                RECONNECT_BASE_DELAY.toMillis() << Math.min(attempt, 16));
+        return Duration.ofMillis(capMs / 2 + ThreadLocalRandom.current().nextLong(capMs / 2 + 1));
+    }
+
+    private void attemptReconnect() {
+        if (state.get() != State.BACKOFF) {
+            return;
+        }
+        if (!RECONNECT_PERMITS.tryAcquire()) {
+            LicenseScheduler.shared().schedule(this::attemptReconnect, RECONNECT_PERMIT_RETRY);
+            return;
+        }
+        try {
+            if (!state.compareAndSet(State.BACKOFF, State.CONNECTING)) {
+                return;
+            }
+            Set<String> keys = Set.copyOf(licenseKeys.get());
+            if (keys.isEmpty()) {
+                state.set(State.CLOSED);
+                return;
+            }
+            List<EndpointSelector.Endpoint> candidates = endpoints.candidates(2);
+            EndpointSelector.Endpoint next = candidates.get(0);
+            if (lastAttemptFailed && next == endpoint && candidates.size() > 1) {
+                next = candidates.get(1);
+            }
+            endpoint = next;
+            subscribedKeys = keys;
+            this.uri = buildUri(next.url(), keys, deviceId, lastSeq.get(), serverEpoch);
+            connectStarted = System.nanoTime();
+            // Thất bại sẽ gọi lại onClose, từ đó lập lịch lần thử kế tiếp
+            reconnectBlocking();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.warn("Reconnect failed", e);
+        } finally {
+            RECONNECT_PERMITS.release();
+        }
+    }
+
+    /** Đóng hẳn kết nối và dừng mọi lần reconnect (deactivate hoặc license bị khóa). */
+    public void shutdown() {
+        state.set(State.CLOSED);
+        close();
+    }
+
+    /**
+     * Danh sách license thay đổi: đóng và mở lại ngay với URL mới. Khi đang bắt tay thì onOpen so lại
+     * danh sách và tự mở lại; khi đang chờ reconnect thì URL mới được dựng lúc kết nối.
+     */
+    public void resubscribe() {
+        reconnectAttempts.set(0);
+        if (isOpen()) {
+            close(CLOSE_RESUBSCRIBE, "resubscribe");
+        }
+    }
+
+    public State getState() {
+        return state.get();
     }
 
     @Override
     public void onError(Exception ex) {
-        System.err.println("=== WebSocket ERROR ===");
-        System.err.println("WebSocket error: " + ex.getMessage());
-        ex.printStackTrace();
-    }
-
-    private void handleLicenseLock(String reason) {
-        System.out.println("=== handleLicenseLock called ===");
-        System.out.println("Reason: " + reason);
-        System.out.println("MainController is null? " + (mainController == null));
-        
-        // Dừng heartbeat thread trước
-        if (controller != null) {
-            controller.stopHeartbeat();
-            System.out.println("Heartbeat stopped");
-        }
-        
-        // Hiển thị alert trên MainController nếu có, nếu không thì hiển thị trực tiếp
-        if (mainController != null) {
-            System.out.println("Calling mainController.showLockAlert()");
-            mainController.showLockAlert(reason);
-        } else {
-            System.out.println("MainController is null, showing alert directly");
-            Platform.runLater(() -> {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("License bị thu hồi");
-                alert.setHeaderText("License của bạn đã bị thu hồi!");
-                alert.setContentText(reason);
-                alert.showAndWait();
-                
-                System.exit(0);
-            });
-        }
+        LicenseMetrics.shared().counter("license_ws_events_total", "event", "error").increment();
+        LOG.warn("WebSocket error", ex);
     }
 }
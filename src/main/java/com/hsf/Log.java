@@ -0,0 +1,265 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Logger nhẹ có mức log, tạo message lười (Supplier) và ghi một dòng key=value cho mỗi sự kiện.
+ * Cấu hình qua system properties:
+ * license.log.level (TRACE|DEBUG|INFO|WARN|ERROR|OFF, mặc định WARN),
+ * license.log.file (ghi vào file thay vì stderr), license.log.async=true (ghi qua hàng đợi nền,
+ * bỏ dòng khi hàng đợi đầy thay vì chặn luồng gọi).
+ */
+public final class Log {
+
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Level THRESHOLD = parseLevel(System.getProperty("license.log.level"));
+    private static final Appender APPENDER = createAppender();
+
+    private final String name;
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    public static Log get(Class<?> type) {
+        return new Log(type.getSimpleName());
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(THRESHOLD) >= 0 && level != Level.OFF;
+    }
+
+    public void trace(Supplier<String> message) {
+        if (isEnabled(Level.TRACE)) {
+            write(Level.TRACE, message.get(), null);
+        }
+    }
+
+    public void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) {
+            write(Level.DEBUG, message.get(), null);
+        }
+    }
+
+    public void info(Supplier<String> message) {
+        if (isEnabled(Level.INFO)) {
+            write(Level.INFO, message.get(), null);
+        }
+    }
+
+    public void info(String message) {
+        if (isEnabled(Level.INFO)) {
+            write(Level.INFO, message, null);
+        }
+    }
+
+    public void warn(String message) {
+        warn(message, null);
+    }
+
+    public void warn(String message, Throwable error) {
+        if (isEnabled(Level.WARN)) {
+            write(Level.WARN, message, error);
+        }
+    }
+
+    public void error(String message, Throwable error) {
+        if (isEnabled(Level.ERROR)) {
+            write(Level.ERROR, message, error);
+        }
+    }
+
+    /**
+     * Sự kiện có cấu trúc: evt=name k1=v1 k2=v2 ... Các cặp key/value chỉ được format khi level bật.
+     */
+    public void event(Level level, String event, Object... keyValues) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        StringBuilder line = header(level).append(" evt=").append(event);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            line.append(' ').append(keyValues[i]).append('=');
+            appendValue(line, keyValues[i + 1]);
+        }
+        APPENDER.append(line.toString());
+    }
+
+    private void write(Level level, String message, Throwable error) {
+        StringBuilder line = header(level).append(" msg=");
+        appendValue(line, message);
+        if (error != null) {
+            line.append(" err=");
+            appendValue(line, error.toString());
+            if (isEnabled(Level.DEBUG)) {
+                StringWriter trace = new StringWriter();
+                error.printStackTrace(new PrintWriter(trace));
+                line.append(System.lineSeparator()).append(trace);
+            }
+        }
+        APPENDER.append(line.toString());
+    }
+
+    private StringBuilder header(Level level) {
+        return new StringBuilder(128)
+                .append("ts=").append(Instant.now())
+                .append(" lvl=").append(level)
+                .append(" src=").append(name);
+    }
+
+    private static void appendValue(StringBuilder line, Object value) {
+        String text = String.valueOf(value);
+        if (text.indexOf(' ') < 0 && text.indexOf('"') < 0 && text.indexOf('=') < 0 && !text.isEmpty()) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c == '\n' ? ' ' : c);
+        }
+        line.append('"');
+    }
+
+    // Gõ sai mức log không được làm hỏng khởi tạo class (mọi class dùng Log sẽ không nạp được)
+    private static Level parseLevel(String value) {
+        if (value == null || value.isBlank()) {
+            return Level.WARN;
+        }
+        try {
+            return Level.valueOf(value.strip().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown license.log.level '" + value + "', using WARN");
+            return Level.WARN;
+        }
+    }
+
+    private static Appender createAppender() {
+        Writer out;
+        String file = System.getProperty("license.log.file");
+        if (file != null && !file.isBlank()) {
+            try {
+                Path path = Path.of(file);
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Cannot open log file " + file + ": " + e.getMessage());
+                out = new PrintWriter(System.err);
+            }
+        } else {
+            out = new PrintWriter(System.err);
+        }
+        return Boolean.getBoolean("license.log.async") ? new AsyncAppender(out) : new SyncAppender(out);
+    }
+
+    private interface Appender {
+        void append(String line);
+    }
+
+    // ReentrantLock thay cho synchronized: ghi I/O trong monitor giữ chặt carrier thread của virtual thread
+    private static final class SyncAppender implements Appender {
+        private final Writer out;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        SyncAppender(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void append(String line) {
+            lock.lock();
+            try {
+                out.write(line);
+                out.write(System.lineSeparator());
+                out.flush();
+            } catch (IOException e) {
+                // không còn chỗ nào để báo lỗi ghi log
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class AsyncAppender implements Appender {
+        private static final int CAPACITY = 1024;
+
+        private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+        private final AtomicLong dropped = new AtomicLong();
+        private final Writer out;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        AsyncAppender(Writer out) {
+            this.out = out;
+            Thread.ofVirtual().name("license-log").start(this::drain);
+            // Ghi nốt các dòng còn trong hàng đợi khi JVM thoát
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flushRemaining, "license-log-flush"));
+        }
+
+        @Override
+        public void append(String line) {
+            if (!queue.offer(line)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        private void drain() {
+            try {
+                while (true) {
+                    String line = queue.take();
+                    lock.lock();
+                    try {
+                        out.write(line);
+                        out.write(System.lineSeparator());
+                        long lost = dropped.getAndSet(0);
+                        if (lost > 0) {
+                            out.write("ts=" + Instant.now() + " lvl=WARN src=Log evt=dropped count=" + lost);
+                            out.write(System.lineSeparator());
+                        }
+                        if (queue.isEmpty()) {
+                            out.flush();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (InterruptedException | IOException e) {
+                // dừng ghi log
+            }
+        }
+
+        private void flushRemaining() {
+            lock.lock();
+            try {
+                String line;
+                while ((line = queue.poll()) != null) {
+                    out.write(line);
+                    out.write(System.lineSeparator());
+                }
+                out.flush();
+            } catch (IOException e) {
+                // JVM đang thoát
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
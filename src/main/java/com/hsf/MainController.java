@@ -2,14 +2,18 @@ package com.hsf;
 
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.stage.Stage;
 
 public class MainController {
+
+    private static final Log LOG = Log.get(MainController.class);
+    private static final String ACTIVE_STYLE = "-fx-font-size: 14px; -fx-text-fill: green;";
+    private static final String LOCKED_STYLE = "-fx-font-size: 14px; -fx-text-fill: red;";
     
     @FXML
     private Label licenseLabel;
@@ -19,10 +23,15 @@ public class MainController {
     
     @FXML
     private Label statusLabel;
+
+    @FXML
+    private Button deactivateButton;
     
     private String license;
     private String deviceId;
     private Controller parentController;
+    // Cập nhật từ luồng nền (push của server) được gộp, mỗi lô một Platform.runLater
+    private final FxUpdateCoalescer ui = new FxUpdateCoalescer();
     
     public void initialize(String license, String deviceId, Controller parentController) {
         this.license = license;
@@ -35,42 +44,70 @@ public class MainController {
     
     @FXML
     public void deactivate() {
-        try {
-            if (parentController != null) {
-                parentController.deactivate();
+        if (parentController == null) {
+            showActivationScreen();
+            return;
+        }
+        deactivateButton.setDisable(true);
+        statusLabel.setText("Trạng thái: Đang hủy kích hoạt...");
+        parentController.deactivateAsync().whenComplete((ok, error) -> Platform.runLater(() -> {
+            if (Boolean.TRUE.equals(ok)) {
+                // Navigate back to login screen
+                showActivationScreen();
+            } else {
+                deactivateButton.setDisable(false);
+                statusLabel.setText("Trạng thái: Đang hoạt động");
             }
-            
-            // Navigate back to login screen
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("view.fxml"));
-            Parent root = loader.load();
-            
+        }));
+    }
+
+    public void showActivationScreen() {
+        try {
+            Parent root = SceneCache.take("view").root();
+
             Stage stage = (Stage) licenseLabel.getScene().getWindow();
             stage.setScene(new Scene(root, 600, 400));
             stage.setTitle("Kích hoạt License");
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("Cannot load activation screen", e);
         }
     }
     
     public void showLockAlert(String reason) {
-        System.out.println("=== showLockAlert called in MainController ===");
-        System.out.println("Reason: " + reason);
-        
-        Platform.runLater(() -> {
-            System.out.println("Running on JavaFX thread");
-            statusLabel.setText("Trạng thái: Bị khóa");
-            statusLabel.setStyle("-fx-font-size: 14px; -fx-text-fill: red;");
-            System.out.println("Status label updated");
-            
+        setStatus("Trạng thái: Bị khóa", LOCKED_STYLE);
+        // Cùng khóa "lock": LOCK lặp lại trước khi alert kịp hiện chỉ tạo một alert
+        ui.update("lock", () -> {
             Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("License bị thu hồi");
             alert.setHeaderText("License của bạn đã bị thu hồi!");
             alert.setContentText(reason);
-            System.out.println("About to show alert");
             alert.showAndWait();
             
-            System.out.println("Alert closed, exiting app");
             System.exit(0);
         });
     }
+
+    /** Server mở khóa license (UNLOCK). Gọi được từ mọi luồng. */
+    public void showUnlocked() {
+        setStatus("Trạng thái: Đang hoạt động", ACTIVE_STYLE);
+    }
+
+    /** QUOTA {"data":{"used":N,"limit":M}}, hoặc chỉ reason nếu server gửi sẵn câu hiển thị. Gọi được từ mọi luồng. */
+    public void showQuota(PushMessage message) {
+        long used = LicenseJson.readLong(message.data(), "used", -1);
+        long limit = LicenseJson.readLong(message.data(), "limit", -1);
+        String detail = used >= 0 && limit > 0 ? "đã dùng " + used + "/" + limit : message.reason();
+        if (detail == null) {
+            return;
+        }
+        setStatus("Trạng thái: Đang hoạt động (" + detail + ")",
+                limit > 0 && used >= limit ? LOCKED_STYLE : ACTIVE_STYLE);
+    }
+
+    private void setStatus(String text, String style) {
+        ui.update("status", () -> {
+            statusLabel.setText(text);
+            statusLabel.setStyle(style);
+        });
+    }
 }
@@ -0,0 +1,80 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Xuất LicenseMetrics ra ngoài, bật bằng system properties:
+ * license.metrics.port (endpoint Prometheus text tại http://127.0.0.1:port/metrics),
+ * license.metrics.file (ghi JSON định kỳ, chu kỳ license.metrics.intervalSeconds, mặc định 60).
+ */
+public final class MetricsExporter {
+
+    private static final Log LOG = Log.get(MetricsExporter.class);
+
+    private MetricsExporter() {
+    }
+
+    public static void startFromSystemProperties() {
+        Integer port = Integer.getInteger("license.metrics.port");
+        if (port != null) {
+            startHttp(port);
+        }
+        String file = System.getProperty("license.metrics.file");
+        if (file != null && !file.isBlank()) {
+            startFileDump(Path.of(file), Duration.ofSeconds(Long.getLong("license.metrics.intervalSeconds", 60)));
+        }
+    }
+
+    public static HttpServer startHttp(int port) {
+        try {
+            // Chỉ lắng nghe trên loopback: metric dành cho máy cục bộ
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = LicenseMetrics.shared().toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(null);
+            server.start();
+            LOG.info(() -> "Metrics endpoint on http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+            return server;
+        } catch (IOException e) {
+            LOG.warn("Cannot start metrics endpoint on port " + port, e);
+            return null;
+        }
+    }
+
+    public static LicenseScheduler.Task startFileDump(Path file, Duration interval) {
+        return LicenseScheduler.shared().scheduleAtFixedRate(() -> dump(file), interval, 0);
+    }
+
+    public static void dump(Path file) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+                 JsonWriter writer = new JsonWriter(out)) {
+                LicenseMetrics.shared().writeJson(writer);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Cannot write metrics file " + file, e);
+        }
+    }
+}
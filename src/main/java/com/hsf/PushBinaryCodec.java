@@ -0,0 +1,147 @@
+package com.hsf;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Định dạng nhị phân gọn cho message push, dùng khi client và server thỏa thuận subprotocol
+ * {@link #PROTOCOL}; không thỏa thuận được thì vẫn là JSON text như cũ. Mọi số nguyên là varint
+ * không dấu (LEB128), chuỗi là varint (số byte UTF-8 + 1, 0 = null) rồi tới các byte UTF-8:
+ * <pre>
+ * byte    phiên bản (1)
+ * byte    type: 1 LOCK, 2 UNLOCK, 3 HEARTBEAT, 4 HEARTBEAT_ACK, 0 = chuỗi type đi ngay sau
+ * varint  seq + 1 (0 = không đánh số)
+ * [chuỗi  type]
+ * chuỗi   licenseKey
+ * chuỗi   reason
+ * [chuỗi  data]   JSON thô của trường data, chỉ có khi message mang dữ liệu (QUOTA, CONFIG...)
+ * </pre>
+ * Byte thừa sau các trường đã biết được bỏ qua để server thêm trường mới mà không làm hỏng client cũ.
+ */
+public final class PushBinaryCodec {
+
+    public static final String PROTOCOL = "hsf-license.bin.v1";
+
+    private static final byte VERSION = 1;
+    // Chỉ số trong mảng = mã type trên dây; 0 dành cho type dạng chuỗi
+    private static final String[] TYPES = { null, "LOCK", "UNLOCK", "HEARTBEAT", "HEARTBEAT_ACK" };
+
+    private PushBinaryCodec() {
+    }
+
+    /** Giải mã một frame nhị phân; null nếu sai phiên bản hoặc hỏng (như {@link LicenseJson#decodePush}). */
+    public static PushMessage decode(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        try {
+            if (in.get() != VERSION) {
+                return null;
+            }
+            int code = in.get() & 0xFF;
+            long seq = readVarLong(in) - 1;
+            String type;
+            if (code == 0) {
+                type = readString(in);
+            } else if (code < TYPES.length) {
+                type = TYPES[code];
+            } else {
+                return null;
+            }
+            String licenseKey = readString(in);
+            String reason = readString(in);
+            String data = in.hasRemaining() ? readString(in) : null;
+            return new PushMessage(type, reason, seq < 0 ? PushMessage.NO_SEQ : seq, licenseKey, data);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static ByteBuffer encode(PushMessage message) {
+        byte[] type = null;
+        int code = 0;
+        for (int i = 1; i < TYPES.length; i++) {
+            if (TYPES[i].equals(message.type())) {
+                code = i;
+                break;
+            }
+        }
+        if (code == 0) {
+            type = utf8(message.type());
+        }
+        byte[] licenseKey = utf8(message.licenseKey());
+        byte[] reason = utf8(message.reason());
+        byte[] data = utf8(message.data());
+        ByteBuffer out = ByteBuffer.allocate(2 + 10 + sizeOf(type) + sizeOf(licenseKey) + sizeOf(reason)
+                + (data == null ? 0 : sizeOf(data)));
+        out.put(VERSION).put((byte) code);
+        writeVarLong(out, message.hasSeq() ? message.seq() + 1 : 0);
+        if (code == 0) {
+            writeString(out, type);
+        }
+        writeString(out, licenseKey);
+        writeString(out, reason);
+        if (data != null) {
+            writeString(out, data);
+        }
+        return out.flip();
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] value) {
+        return 5 + (value == null ? 0 : value.length);
+    }
+
+    private static void writeString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, value.length + 1L);
+        out.put(value);
+    }
+
+    private static String readString(ByteBuffer in) {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        // Varint 64 bit có thể âm khi ép kiểu: kiểm tra trước khi dùng làm kích thước mảng
+        if (length < 1 || length - 1 > in.remaining()) {
+            throw new IllegalArgumentException("String length " + (length - 1) + " exceeds frame");
+        }
+        int size = (int) (length - 1);
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), size, StandardCharsets.UTF_8);
+            in.position(in.position() + size);
+        } else {
+            byte[] bytes = new byte[size];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static void writeVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
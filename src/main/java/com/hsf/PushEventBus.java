@@ -0,0 +1,142 @@
+package com.hsf;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Giao message push cho các handler đăng ký theo type, ngoài luồng đọc của socket. Message vào một hàng
+ * đợi có giới hạn và được một tác vụ duy nhất trên executor xử lý lần lượt (giữ đúng thứ tự nhận).
+ * Type không có handler bị bỏ ngay, không vào hàng đợi. Khi hàng đợi đầy: LOCK/UNLOCK không bao giờ bị
+ * bỏ (luồng socket chờ, áp lực ngược lên TCP), các type còn lại bị bỏ và đếm vào
+ * license_push_dropped_total. Handler chậm hoặc lỗi không làm mất message của handler khác.
+ */
+public final class PushEventBus {
+
+    private static final Log LOG = Log.get(PushEventBus.class);
+
+    public static final String LOCK = "LOCK";
+    public static final String UNLOCK = "UNLOCK";
+    public static final String QUOTA = "QUOTA";
+    public static final String CONFIG = "CONFIG";
+    public static final String HEARTBEAT_ACK = "HEARTBEAT_ACK";
+
+    private static final int DEFAULT_CAPACITY = Integer.getInteger("license.push.queueCapacity", 256);
+    private static final Set<String> NEVER_DROPPED = Set.of(LOCK, UNLOCK);
+
+    private record Queued(PushMessage message, long enqueuedAt) {
+    }
+
+    /** Một handler đã đăng ký; cancel() để gỡ (ví dụ khi rời màn hình chính). */
+    public final class Subscription {
+        private final String type;
+        private final Consumer<PushMessage> handler;
+
+        private Subscription(String type, Consumer<PushMessage> handler) {
+            this.type = type;
+            this.handler = handler;
+        }
+
+        public void cancel() {
+            List<Subscription> current = handlers.get(type);
+            if (current != null) {
+                current.remove(this);
+            }
+        }
+    }
+
+    private final Executor executor;
+    private final BlockingQueue<Queued> queue;
+    private final Map<String, List<Subscription>> handlers = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final LicenseMetrics metrics = LicenseMetrics.shared();
+
+    public PushEventBus(Executor executor) {
+        this(executor, DEFAULT_CAPACITY);
+    }
+
+    public PushEventBus(Executor executor, int capacity) {
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public Subscription subscribe(String type, Consumer<PushMessage> handler) {
+        Subscription subscription = new Subscription(type, handler);
+        handlers.computeIfAbsent(type, key -> new CopyOnWriteArrayList<>()).add(subscription);
+        return subscription;
+    }
+
+    /** Gọi từ luồng socket; trả về false nếu message bị bỏ (không có handler hoặc hàng đợi đầy). */
+    public boolean publish(PushMessage message) {
+        List<Subscription> current = handlers.get(message.type());
+        if (current == null || current.isEmpty()) {
+            metrics.counter("license_push_unhandled_total", "type", String.valueOf(message.type())).increment();
+            return false;
+        }
+        Queued queued = new Queued(message, System.nanoTime());
+        if (!queue.offer(queued)) {
+            if (!NEVER_DROPPED.contains(message.type())) {
+                metrics.counter("license_push_dropped_total", "type", message.type()).increment();
+                LOG.debug(() -> "Push queue full, dropped " + message.type());
+                return false;
+            }
+            metrics.counter("license_push_backpressure_total").increment();
+            try {
+                queue.put(queued);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public boolean hasSubscribers(String type) {
+        List<Subscription> current = handlers.get(type);
+        return current != null && !current.isEmpty();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        do {
+            Queued queued;
+            while ((queued = queue.poll()) != null) {
+                deliver(queued);
+            }
+            draining.set(false);
+            // Message vào giữa lúc poll trả null và lúc trả cờ: nhận lại lượt drain nếu chưa ai nhận
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void deliver(Queued queued) {
+        PushMessage message = queued.message();
+        long started = System.nanoTime();
+        metrics.histogram("license_push_queue_wait_seconds").recordNanos(started - queued.enqueuedAt());
+        for (Subscription subscription : handlers.getOrDefault(message.type(), List.of())) {
+            try {
+                subscription.handler.accept(message);
+            } catch (RuntimeException e) {
+                metrics.counter("license_push_handler_errors_total", "type", message.type()).increment();
+                LOG.warn("Push handler for " + message.type() + " failed", e);
+            }
+        }
+        metrics.histogram("license_push_handle_seconds", "type", message.type()).recordSince(started);
+    }
+}
@@ -0,0 +1,18 @@
+package com.hsf;
+
+/**
+ * Message server đẩy qua WebSocket. Chỉ giữ các trường client dùng; seq = -1 nếu server không đánh số.
+ * data là JSON thô của trường "data" (QUOTA, CONFIG...) hoặc null; handler tự đọc phần mình cần.
+ */
+public record PushMessage(String type, String reason, long seq, String licenseKey, String data) {
+
+    public static final long NO_SEQ = -1;
+
+    public PushMessage(String type, String reason, long seq, String licenseKey) {
+        this(type, reason, seq, licenseKey, null);
+    }
+
+    public boolean hasSeq() {
+        return seq != NO_SEQ;
+    }
+}
@@ -0,0 +1,84 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+
+/**
+ * Giữ sẵn một bản đã parse (root + controller) cho mỗi màn hình FXML. Bản này được load trên luồng nền;
+ * khi chuyển màn hình chỉ việc lấy ra dùng trên luồng JavaFX và bản kế tiếp được chuẩn bị lại trong nền.
+ * Tắt bằng -Dlicense.fastStart=false để load đồng bộ như trước.
+ */
+public final class SceneCache {
+
+    private static final Log LOG = Log.get(SceneCache.class);
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("license.fastStart", "true"));
+    private static final Map<String, CompletableFuture<Loaded>> READY = new ConcurrentHashMap<>();
+
+    private SceneCache() {
+    }
+
+    /** Một lần load FXML: node gốc và controller tương ứng. */
+    public record Loaded(Parent root, Object controller) {
+
+        @SuppressWarnings("unchecked")
+        public <T> T getController() {
+            return (T) controller;
+        }
+    }
+
+    /** Bắt đầu parse các màn hình (tên file không có .fxml) trong nền nếu chưa có bản chờ sẵn. */
+    public static void preload(String... names) {
+        if (!ENABLED) {
+            return;
+        }
+        for (String name : names) {
+            READY.computeIfAbsent(name, SceneCache::loadAsync);
+        }
+    }
+
+    /**
+     * Lấy bản đã parse (chờ nếu đang parse dở), load đồng bộ nếu chưa có hoặc preload lỗi,
+     * rồi chuẩn bị bản kế tiếp. Gọi trên luồng JavaFX.
+     */
+    public static Loaded take(String name) throws IOException {
+        CompletableFuture<Loaded> ready = ENABLED ? READY.remove(name) : null;
+        Loaded loaded = null;
+        if (ready != null) {
+            try {
+                loaded = ready.join();
+            } catch (CompletionException e) {
+                LOG.warn("Preloading " + name + ".fxml failed, loading synchronously", e.getCause());
+            }
+        }
+        if (loaded == null) {
+            loaded = load(name);
+        }
+        preload(name);
+        return loaded;
+    }
+
+    private static CompletableFuture<Loaded> loadAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, LicenseScheduler.shared()::execute);
+    }
+
+    private static Loaded load(String name) throws IOException {
+        long started = System.nanoTime();
+        FXMLLoader loader = new FXMLLoader(SceneCache.class.getResource(name + ".fxml"));
+        Parent root = loader.load();
+        LicenseMetrics.shared().histogram("license_fxml_load_seconds", "view", name).recordSince(started);
+        return new Loaded(root, loader.getController());
+    }
+}
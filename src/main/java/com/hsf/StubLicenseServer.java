@@ -0,0 +1,829 @@
+package com.hsf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.server.WebSocketServer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * License server giả lập chạy trong tiến trình, thay cho server Spring Boot khi đo hiệu năng và thử lỗi
+ * trên máy cục bộ. HTTP (/api/license/activate, /deactivate, /heartbeat, /heartbeat/batch) dùng
+ * HttpServer của JDK, /ws/license dùng WebSocketServer của Java-WebSocket. HttpServer không nâng cấp được lên
+ * WebSocket nên mặc định cả hai chạy trên cổng nội bộ sau một {@link SharedPort}: HTTP và WebSocket chung
+ * cổng 8080 như server thật và như client mặc định. Chỉ lắng nghe trên loopback.
+ * Chạy: mvn compile exec:java -Dexec.mainClass="com.hsf.StubLicenseServer"
+ *
+ * Cấu hình qua system properties (license.stub.*): httpPort (8080), wsPort (-1: chung cổng HTTP; đặt cổng
+ * riêng để bỏ lớp chuyển tiếp khi đo hiệu năng), latencyMs và
+ * latencyJitterMs (độ trễ thêm vào mỗi request HTTP), errorRate (tỉ lệ trả 503), disconnectEverySeconds
+ * (ngắt mọi WebSocket định kỳ), nextHeartbeatSeconds (gợi ý chu kỳ heartbeat), script (file kịch bản,
+ * xem {@link #runScript(List)}), binary (true: nhận subprotocol nhị phân {@link PushBinaryCodec#PROTOCOL}),
+ * deflate (true: nhận permessage-deflate), tokenKeyFile (cặp khóa Ed25519 ký token /activate: dòng 1 khóa
+ * riêng PKCS#8, dòng 2 khóa công khai X.509, base64; chưa có thì tạo mới và ghi vào file; không đặt thì mỗi
+ * lần chạy một cặp khóa mới). Khóa công khai in ra khi khởi động để đặt vào
+ * {@value LicenseTokenCache#PUBLIC_KEY_RESOURCE} khi thử dùng offline.
+ */
+public final class StubLicenseServer {
+
+    private static final Log LOG = Log.get(StubLicenseServer.class);
+
+    private static final String API_PREFIX = "/api/license";
+    private static final String WS_PATH = "/ws/license";
+    // Số message giữ lại mỗi device để phát lại theo lastSeq
+    private static final int REPLAY_HISTORY = 64;
+    private static final int CLOSE_GOING_AWAY = 1001;
+    private static final int CLOSE_POLICY_VIOLATION = 1008;
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration TOKEN_LIFETIME = Duration.ofHours(72);
+    static final int SHARED_PORT = -1;
+
+    record Config(int httpPort, int wsPort, Duration latency, Duration latencyJitter, double errorRate,
+                  Duration disconnectEvery, long nextHeartbeatSeconds, Path script, boolean binary,
+                  boolean deflate, Path tokenKeyFile) {
+
+        static Config fromSystemProperties() {
+            return fromSystemProperties(8080, SHARED_PORT);
+        }
+
+        /** Cổng 0 = chọn cổng trống (khi nhúng vào FleetSimulator); wsPort {@value #SHARED_PORT} = chung cổng HTTP. */
+        static Config fromSystemProperties(int defaultHttpPort, int defaultWsPort) {
+            String script = System.getProperty("license.stub.script");
+            String tokenKeyFile = System.getProperty("license.stub.tokenKeyFile");
+            return new Config(
+                    Integer.getInteger("license.stub.httpPort", defaultHttpPort),
+                    Integer.getInteger("license.stub.wsPort", defaultWsPort),
+                    Duration.ofMillis(Long.getLong("license.stub.latencyMs", 0)),
+                    Duration.ofMillis(Long.getLong("license.stub.latencyJitterMs", 0)),
+                    Double.parseDouble(System.getProperty("license.stub.errorRate", "0")),
+                    Duration.ofSeconds(Long.getLong("license.stub.disconnectEverySeconds", 0)),
+                    Long.getLong("license.stub.nextHeartbeatSeconds", 0),
+                    script == null || script.isBlank() ? null : Path.of(script),
+                    Boolean.parseBoolean(System.getProperty("license.stub.binary", "true")),
+                    Boolean.parseBoolean(System.getProperty("license.stub.deflate", "true")),
+                    tokenKeyFile == null || tokenKeyFile.isBlank() ? null : Path.of(tokenKeyFile));
+        }
+    }
+
+    private record Activation(String licenseKey, String deviceId, String productName, long lastSeenMillis) {
+    }
+
+    /** Một kết nối /ws/license: device và các license nó theo dõi. */
+    private record Session(String deviceId, Set<String> licenseKeys) {
+    }
+
+    private record Reply(int status, String body) {
+    }
+
+    private final Config config;
+    private final Map<String, Activation> activations = new ConcurrentHashMap<>();
+    private final Set<String> lockedKeys = ConcurrentHashMap.newKeySet();
+    // deviceId -> kết nối mới nhất của device
+    private final Map<String, WebSocket> sockets = new ConcurrentHashMap<>();
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    // licenseKey -> System.nanoTime() lúc gửi LOCK, để đo độ trễ lan truyền khi chạy cùng tiến trình
+    private final Map<String, Long> lockSentAt = new ConcurrentHashMap<>();
+    private final LicenseMetrics metrics = LicenseMetrics.shared();
+    // Mỗi instance một dãy seq mới, như server thật khởi động lại
+    private final String epoch = UUID.randomUUID().toString();
+
+    private volatile long latencyMs;
+    private volatile long latencyJitterMs;
+    private volatile double errorRate;
+
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private PushServer pushServer;
+    private SharedPort sharedPort;
+    private LicenseScheduler.Task disconnectTask;
+    private KeyPair tokenKeys;
+
+    public StubLicenseServer(Config config) {
+        this.config = config;
+        this.latencyMs = config.latency().toMillis();
+        this.latencyJitterMs = config.latencyJitter().toMillis();
+        this.errorRate = config.errorRate();
+    }
+
+    public static void main(String[] args) throws Exception {
+        StubLicenseServer server = new StubLicenseServer(Config.fromSystemProperties()).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "license-stub-stop"));
+        System.out.println("=== Stub license server ===");
+        System.out.println("HTTP: " + server.getHttpUrl());
+        System.out.println("WebSocket: " + server.getWsUrl() + WS_PATH);
+        System.out.println("Client: -Dlicense.server.url=" + server.getHttpUrl()
+                + " -Dlicense.ws.url=" + server.getWsUrl());
+        System.out.println("Token public key: " + server.getTokenPublicKey());
+        Thread.currentThread().join();
+    }
+
+    public synchronized StubLicenseServer start() throws IOException, InterruptedException {
+        tokenKeys = loadTokenKeys(config.tokenKeyFile());
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        // HttpServer mặc định bật Nagle: response nhỏ bị giữ ~40ms chờ delayed ACK của client
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        httpExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("license-stub-http-", 0).factory());
+        boolean shared = config.wsPort() == SHARED_PORT;
+        httpServer = HttpServer.create(new InetSocketAddress(loopback, shared ? 0 : config.httpPort()), 0);
+        httpServer.createContext(API_PREFIX, this::handle);
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+
+        // Cùng draft với client: đề nghị nào không bật thì bắt tay ra JSON text / không nén
+        pushServer = new PushServer(new InetSocketAddress(loopback, shared ? 0 : config.wsPort()),
+                LicenseWebSocketClient.draft(config.deflate(), config.binary()));
+        pushServer.setReuseAddr(true);
+        pushServer.start();
+        if (!pushServer.started.await(STARTUP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IOException("WebSocket server did not start on port " + config.wsPort());
+        }
+        if (shared) {
+            sharedPort = new SharedPort(new InetSocketAddress(loopback, config.httpPort()),
+                    httpServer.getAddress(), new InetSocketAddress(loopback, pushServer.getPort()));
+        }
+
+        if (!config.disconnectEvery().isZero()) {
+            disconnectTask = LicenseScheduler.shared().scheduleAtFixedRate(() -> disconnect(null),
+                    config.disconnectEvery(), 0);
+        }
+        if (config.script() != null) {
+            runScript(Files.readAllLines(config.script(), StandardCharsets.UTF_8));
+        }
+        LOG.info(() -> "Stub license server on " + getHttpUrl() + " and " + getWsUrl());
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (disconnectTask != null) {
+            disconnectTask.cancel();
+        }
+        if (sharedPort != null) {
+            sharedPort.close();
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpExecutor.close();
+        }
+        if (pushServer != null) {
+            try {
+                pushServer.stop(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public String getHttpUrl() {
+        int port = sharedPort != null ? sharedPort.port() : httpServer.getAddress().getPort();
+        return "http://127.0.0.1:" + port + API_PREFIX;
+    }
+
+    /** Khóa công khai (X.509, base64) để client kiểm tra token do stub ký. */
+    public String getTokenPublicKey() {
+        return Base64.getEncoder().encodeToString(tokenKeys.getPublic().getEncoded());
+    }
+
+    public String getWsUrl() {
+        return "ws://127.0.0.1:" + (sharedPort != null ? sharedPort.port() : pushServer.getPort());
+    }
+
+    public void setLatency(Duration latency, Duration jitter) {
+        this.latencyMs = latency.toMillis();
+        this.latencyJitterMs = jitter.toMillis();
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Khóa license và đẩy LOCK tới device đang giữ nó. Trả về false nếu license không kích hoạt
+     * và không có kết nối nào theo dõi nó.
+     */
+    public boolean lock(String licenseKey, String reason) {
+        lockedKeys.add(licenseKey);
+        Activation activation = activations.remove(licenseKey);
+        String deviceId = activation != null ? activation.deviceId() : findSubscriber(licenseKey);
+        if (deviceId == null) {
+            LOG.event(Log.Level.WARN, "stub_lock_no_target", "license", licenseKey);
+            return false;
+        }
+        lockSentAt.put(licenseKey, System.nanoTime());
+        push(deviceId, new PushMessage("LOCK", reason, PushMessage.NO_SEQ, licenseKey));
+        metrics.counter("license_stub_locks_total").increment();
+        return true;
+    }
+
+    /** Khóa một license đang kích hoạt chọn ngẫu nhiên; trả về licenseKey hoặc null nếu không có. */
+    public String lockRandom(String reason) {
+        List<String> keys = new ArrayList<>(activations.keySet());
+        if (keys.isEmpty()) {
+            return null;
+        }
+        String licenseKey = keys.get(ThreadLocalRandom.current().nextInt(keys.size()));
+        return lock(licenseKey, reason) ? licenseKey : null;
+    }
+
+    /** Mở khóa license và đẩy UNLOCK tới device đang theo dõi nó (nếu có). */
+    public void unlock(String licenseKey) {
+        lockedKeys.remove(licenseKey);
+        pushEvent(PushEventBus.UNLOCK, licenseKey, null, null);
+    }
+
+    /**
+     * Đẩy một message tùy ý (QUOTA, CONFIG...) tới device đang giữ license; data là JSON thô hoặc null.
+     * Trả về false nếu không có device nào giữ hay theo dõi license.
+     */
+    public boolean pushEvent(String type, String licenseKey, String reason, String data) {
+        Activation activation = activations.get(licenseKey);
+        String deviceId = activation != null ? activation.deviceId() : findSubscriber(licenseKey);
+        if (deviceId == null) {
+            return false;
+        }
+        push(deviceId, new PushMessage(type, reason, PushMessage.NO_SEQ, licenseKey, data));
+        metrics.counter("license_stub_pushes_total", "type", type).increment();
+        return true;
+    }
+
+    /** Thời điểm (System.nanoTime()) gửi LOCK gần nhất cho license, hoặc -1. */
+    public long lockSentNanos(String licenseKey) {
+        return lockSentAt.getOrDefault(licenseKey, -1L);
+    }
+
+    /** Ngắt kết nối WebSocket của một device, hoặc của mọi device khi deviceId null (giả lập server restart). */
+    public int disconnect(String deviceId) {
+        int closed = 0;
+        for (WebSocket conn : pushServer.getConnections()) {
+            Session session = conn.getAttachment();
+            if (deviceId == null || (session != null && deviceId.equals(session.deviceId()))) {
+                conn.close(CLOSE_GOING_AWAY, "stub disconnect");
+                closed++;
+            }
+        }
+        metrics.counter("license_stub_ws_events_total", "event", "forced_disconnect").add(closed);
+        return closed;
+    }
+
+    public int getActivationCount() {
+        return activations.size();
+    }
+
+    /**
+     * Chạy kịch bản theo thời gian, mỗi dòng "&lt;giây&gt; &lt;lệnh&gt; [tham số]", dòng trống và dòng bắt đầu bằng #
+     * được bỏ qua. Lệnh: LOCK &lt;licenseKey|*&gt; [lý do], UNLOCK &lt;licenseKey&gt;, DISCONNECT [deviceId],
+     * LATENCY &lt;ms&gt; [jitterMs], ERROR_RATE &lt;tỉ lệ&gt;, PUSH &lt;type&gt; &lt;licenseKey&gt; [data JSON]. Sai cú pháp ném IllegalArgumentException trước khi
+     * lập lịch bất kỳ dòng nào.
+     */
+    public void runScript(List<String> lines) {
+        List<Runnable> actions = new ArrayList<>();
+        List<Duration> delays = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+", 4);
+            try {
+                delays.add(Duration.ofMillis((long) (Double.parseDouble(parts[0]) * 1000)));
+                actions.add(parseCommand(parts));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid script line " + (i + 1) + ": " + line, e);
+            }
+        }
+        for (int i = 0; i < actions.size(); i++) {
+            LicenseScheduler.shared().schedule(actions.get(i), delays.get(i));
+        }
+    }
+
+    private Runnable parseCommand(String[] parts) {
+        String command = parts[1].toUpperCase();
+        String arg = parts.length > 2 ? parts[2] : null;
+        String rest = parts.length > 3 ? parts[3] : null;
+        return switch (command) {
+            case "LOCK" -> {
+                String reason = rest != null ? rest : "Locked by stub script";
+                yield "*".equals(require(arg)) ? () -> lockRandom(reason) : () -> lock(arg, reason);
+            }
+            case "UNLOCK" -> () -> unlock(require(arg));
+            case "DISCONNECT" -> () -> disconnect(arg);
+            case "LATENCY" -> {
+                Duration latency = Duration.ofMillis(Long.parseLong(require(arg)));
+                Duration jitter = Duration.ofMillis(rest != null ? Long.parseLong(rest) : 0);
+                yield () -> setLatency(latency, jitter);
+            }
+            case "PUSH" -> {
+                String type = require(arg).toUpperCase();
+                String[] target = require(rest).split("\\s+", 2);
+                String data = target.length > 1 ? JsonParser.parseString(target[1]).toString() : null;
+                yield () -> pushEvent(type, target[0], null, data);
+            }
+            case "ERROR_RATE" -> {
+                double rate = Double.parseDouble(require(arg));
+                yield () -> setErrorRate(rate);
+            }
+            default -> throw new IllegalArgumentException("Unknown command " + command);
+        };
+    }
+
+    private static String require(String arg) {
+        if (arg == null) {
+            throw new IllegalArgumentException("Missing argument");
+        }
+        return arg;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        String endpoint = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+        Reply reply;
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            injectLatency();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply = error(405, "Method not allowed");
+            } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                reply = error(503, "Injected failure");
+            } else {
+                reply = dispatch(endpoint, LicenseJson.gson().fromJson(body, JsonObject.class));
+            }
+        } catch (JsonParseException | IllegalStateException | ClassCastException e) {
+            reply = error(400, "Invalid request body");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply = error(503, "Server stopping");
+        }
+        byte[] bytes = reply.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(reply.status(), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        metrics.counter("license_stub_requests_total", "endpoint", endpoint,
+                "status", Integer.toString(reply.status())).increment();
+        metrics.histogram("license_stub_latency_seconds", "endpoint", endpoint).recordSince(started);
+    }
+
+    private void injectLatency() throws InterruptedException {
+        long delay = latencyMs;
+        long jitter = latencyJitterMs;
+        if (jitter > 0) {
+            delay += ThreadLocalRandom.current().nextLong(jitter + 1);
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);  // virtual thread: ngủ không chiếm luồng hệ điều hành
+        }
+    }
+
+    private Reply dispatch(String endpoint, JsonObject request) {
+        if (request == null) {
+            return error(400, "Empty request body");
+        }
+        String licenseKey = text(request, "licenseKey");
+        String deviceId = text(request, "deviceId");
+        return switch (endpoint) {
+            case "/activate" -> activate(licenseKey, deviceId, text(request, "productName"));
+            case "/deactivate" -> deactivate(licenseKey, deviceId);
+            case "/heartbeat" -> {
+                String failure = touch(licenseKey, deviceId);
+                yield failure == null ? ok("OK") : error(lockedKeys.contains(licenseKey) ? 403 : 404, failure);
+            }
+            case "/heartbeat/batch" -> heartbeatBatch(deviceId, request.getAsJsonArray("licenses"));
+            default -> error(404, "Unknown endpoint " + endpoint);
+        };
+    }
+
+    private Reply activate(String licenseKey, String deviceId, String productName) {
+        if (licenseKey == null || deviceId == null) {
+            return error(400, "licenseKey and deviceId are required");
+        }
+        if (lockedKeys.contains(licenseKey)) {
+            return error(403, "License is locked");
+        }
+        Activation current = activations.get(licenseKey);
+        if (current != null && !current.deviceId().equals(deviceId)) {
+            return error(409, "License is active on another device");
+        }
+        activations.put(licenseKey, new Activation(licenseKey, deviceId, productName, System.currentTimeMillis()));
+        JsonObject body = okBody("Activated");
+        body.addProperty("token", issueToken(licenseKey, deviceId, productName));
+        return new Reply(200, body.toString());
+    }
+
+    /** Token theo định dạng LicenseTokenCache kiểm tra: base64url(payload).base64url(chữ ký Ed25519). */
+    private String issueToken(String licenseKey, String deviceId, String productName) {
+        long now = System.currentTimeMillis();
+        JsonObject payload = new JsonObject();
+        payload.addProperty("licenseKey", licenseKey);
+        payload.addProperty("deviceId", deviceId);
+        payload.addProperty("productName", productName);
+        payload.addProperty("iat", now);
+        payload.addProperty("exp", now + TOKEN_LIFETIME.toMillis());
+        Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        String encoded = base64.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Signature signer = Signature.getInstance("Ed25519");
+            signer.initSign(tokenKeys.getPrivate());
+            signer.update(encoded.getBytes(StandardCharsets.US_ASCII));
+            return encoded + "." + base64.encodeToString(signer.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign license token", e);
+        }
+    }
+
+    private static KeyPair loadTokenKeys(Path file) throws IOException {
+        try {
+            KeyFactory factory = KeyFactory.getInstance("Ed25519");
+            if (file != null && Files.isRegularFile(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+                Base64.Decoder base64 = Base64.getDecoder();
+                return new KeyPair(
+                        factory.generatePublic(new X509EncodedKeySpec(base64.decode(lines.get(1).strip()))),
+                        factory.generatePrivate(new PKCS8EncodedKeySpec(base64.decode(lines.get(0).strip()))));
+            }
+            KeyPair generated = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+            if (file != null) {
+                Base64.Encoder base64 = Base64.getEncoder();
+                Files.write(file, List.of(base64.encodeToString(generated.getPrivate().getEncoded()),
+                        base64.encodeToString(generated.getPublic().getEncoded())), StandardCharsets.US_ASCII);
+            }
+            return generated;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot load token key pair from " + file, e);
+        }
+    }
+
+    private Reply deactivate(String licenseKey, String deviceId) {
+        Activation current = licenseKey == null ? null : activations.get(licenseKey);
+        if (current == null || !current.deviceId().equals(deviceId) || !activations.remove(licenseKey, current)) {
+            return error(404, "License is not active on this device");
+        }
+        return ok("Deactivated");
+    }
+
+    private Reply heartbeatBatch(String deviceId, JsonArray licenses) {
+        if (deviceId == null || licenses == null) {
+            return error(400, "deviceId and licenses are required");
+        }
+        JsonArray results = new JsonArray();
+        for (JsonElement element : licenses) {
+            String licenseKey = text(element.getAsJsonObject(), "licenseKey");
+            String failure = touch(licenseKey, deviceId);
+            if (failure != null) {
+                JsonObject result = new JsonObject();
+                result.addProperty("licenseKey", licenseKey);
+                result.addProperty("ok", false);
+                result.addProperty("message", failure);
+                results.add(result);
+            }
+        }
+        JsonObject body = okBody("OK");
+        body.add("results", results);
+        return new Reply(200, body.toString());
+    }
+
+    /** Cập nhật last-seen; trả về thông báo lỗi hoặc null nếu hợp lệ. */
+    private String touch(String licenseKey, String deviceId) {
+        if (licenseKey == null || deviceId == null) {
+            return "licenseKey and deviceId are required";
+        }
+        if (lockedKeys.contains(licenseKey)) {
+            return "License is locked";
+        }
+        Activation current = activations.get(licenseKey);
+        if (current == null || !current.deviceId().equals(deviceId)) {
+            return "License is not active on this device";
+        }
+        activations.replace(licenseKey, current, new Activation(licenseKey, deviceId, current.productName(),
+                System.currentTimeMillis()));
+        return null;
+    }
+
+    private Reply ok(String message) {
+        return new Reply(200, okBody(message).toString());
+    }
+
+    private JsonObject okBody(String message) {
+        JsonObject body = new JsonObject();
+        body.addProperty("message", message);
+        if (config.nextHeartbeatSeconds() > 0) {
+            body.addProperty("nextHeartbeatSeconds", config.nextHeartbeatSeconds());
+        }
+        return body;
+    }
+
+    private static Reply error(int status, String message) {
+        JsonObject body = new JsonObject();
+        body.addProperty("message", message);
+        return new Reply(status, body.toString());
+    }
+
+    private static String text(JsonObject json, String field) {
+        JsonElement value = json.get(field);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private String findSubscriber(String licenseKey) {
+        for (WebSocket conn : pushServer.getConnections()) {
+            Session session = conn.getAttachment();
+            if (session != null && session.licenseKeys().contains(licenseKey)) {
+                return session.deviceId();
+            }
+        }
+        return null;
+    }
+
+    private void push(String deviceId, PushMessage message) {
+        PushMessage numbered = outboxes.computeIfAbsent(deviceId, id -> new Outbox()).append(message);
+        WebSocket conn = sockets.get(deviceId);
+        if (conn != null && conn.isOpen()) {
+            send(conn, numbered);
+        }
+        // Không có kết nối: message nằm trong outbox, phát lại khi device reconnect với lastSeq
+    }
+
+    /** JSON text, hoặc nhị phân nếu kết nối đã chọn subprotocol {@link PushBinaryCodec#PROTOCOL}. */
+    private void send(WebSocket conn, PushMessage message) {
+        if (PushBinaryCodec.PROTOCOL.equals(conn.getProtocol().getProvidedProtocol())) {
+            conn.send(PushBinaryCodec.encode(message));
+            metrics.counter("license_stub_ws_frames_total", "format", "binary").increment();
+            return;
+        }
+        conn.send(LicenseJson.encodePush(message));
+        metrics.counter("license_stub_ws_frames_total", "format", "text").increment();
+    }
+
+    /** seq tăng dần theo device (một dãy cho cả kết nối, kể cả khi dùng licenseKeys) và lịch sử để phát lại. */
+    private static final class Outbox {
+        private final Deque<PushMessage> history = new ArrayDeque<>();
+        private long lastSeq;
+
+        synchronized PushMessage append(PushMessage message) {
+            PushMessage numbered = new PushMessage(message.type(), message.reason(), ++lastSeq, message.licenseKey(),
+                    message.data());
+            history.addLast(numbered);
+            if (history.size() > REPLAY_HISTORY) {
+                history.removeFirst();
+            }
+            return numbered;
+        }
+
+        synchronized List<PushMessage> since(long seq) {
+            List<PushMessage> messages = new ArrayList<>();
+            for (PushMessage message : history) {
+                if (message.seq() > seq) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
+    }
+
+    private final class PushServer extends WebSocketServer {
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        PushServer(InetSocketAddress address, Draft draft) {
+            super(address, List.of(draft));
+        }
+
+        @Override
+        public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+                                                                           ClientHandshake request) throws InvalidDataException {
+            ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+            response.put(LicenseWebSocketClient.EPOCH_HEADER, epoch);
+            return response;
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            URI uri = URI.create(handshake.getResourceDescriptor());
+            Map<String, String> params = queryParams(uri.getRawQuery());
+            String deviceId = decode(params.get("deviceId"));
+            Set<String> licenseKeys = new LinkedHashSet<>();
+            if (params.containsKey("licenseKey")) {
+                licenseKeys.add(decode(params.get("licenseKey")));
+            } else if (params.containsKey("licenseKeys")) {
+                // Tách trên chuỗi thô rồi mới giải mã: dấu phẩy trong key đã được mã hóa thành %2C
+                for (String licenseKey : params.get("licenseKeys").split(",")) {
+                    licenseKeys.add(decode(licenseKey));
+                }
+            }
+            if (!WS_PATH.equals(uri.getPath()) || deviceId == null || licenseKeys.isEmpty()) {
+                conn.close(CLOSE_POLICY_VIOLATION, "licenseKey and deviceId are required");
+                return;
+            }
+            conn.setAttachment(new Session(deviceId, licenseKeys));
+            sockets.put(deviceId, conn);
+            metrics.counter("license_stub_ws_events_total", "event", "open").increment();
+
+            // Không có lastSeq hoặc lastSeq của epoch khác: phát lại toàn bộ (client tự bỏ seq trùng)
+            String lastSeq = epoch.equals(decode(params.get("epoch"))) ? decode(params.get("lastSeq")) : null;
+            Outbox outbox = outboxes.get(deviceId);
+            if (outbox != null) {
+                for (PushMessage message : outbox.since(lastSeq != null ? Long.parseLong(lastSeq) : -1)) {
+                    send(conn, message);
+                    metrics.counter("license_stub_ws_events_total", "event", "replay").increment();
+                }
+            }
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+            Session session = conn.getAttachment();
+            if (session != null) {
+                sockets.remove(session.deviceId(), conn);
+            }
+            metrics.counter("license_stub_ws_events_total", "event", "close").increment();
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            Session session = conn.getAttachment();
+            if (session == null || !"HEARTBEAT".equals(LicenseJson.readString(message, "type"))) {
+                return;
+            }
+            for (String licenseKey : session.licenseKeys()) {
+                touch(licenseKey, session.deviceId());
+            }
+            send(conn, new PushMessage("HEARTBEAT_ACK", null, PushMessage.NO_SEQ, null));
+            metrics.counter("license_stub_ws_events_total", "event", "heartbeat").increment();
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+            LOG.warn("Stub WebSocket error", ex);
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+    }
+
+    /**
+     * Một cổng cho cả HTTP và WebSocket: đọc phần header của request đầu tiên trên kết nối, có
+     * "Upgrade: websocket" thì chuyển cả kết nối sang WebSocketServer, không thì sang HttpServer.
+     */
+    private static final class SharedPort {
+        private static final int MAX_HEAD_BYTES = 16 * 1024;
+        private static final byte[] HEAD_END = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        // Luồng nền thường, không phải virtual thread: HttpServer đọc body trong synchronized (giữ chặt carrier),
+        // máy ít nhân thì luồng chuyển body cho nó không bao giờ được chạy
+        private static final Thread.Builder PUMPS = Thread.ofPlatform().daemon();
+
+        private final ServerSocket server;
+        private final InetSocketAddress httpTarget;
+        private final InetSocketAddress wsTarget;
+
+        SharedPort(InetSocketAddress address, InetSocketAddress httpTarget, InetSocketAddress wsTarget)
+                throws IOException {
+            this.httpTarget = httpTarget;
+            this.wsTarget = wsTarget;
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(address);
+            Thread.ofVirtual().name("license-stub-port").start(this::acceptLoop);
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        void close() {
+            try {
+                server.close();
+            } catch (IOException e) {
+                LOG.debug(() -> "Closing shared port: " + e);
+            }
+        }
+
+        private void acceptLoop() {
+            while (!server.isClosed()) {
+                try {
+                    Socket client = server.accept();
+                    PUMPS.name("license-stub-route").start(() -> route(client));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void route(Socket client) {
+            try (client; Socket backend = new Socket()) {
+                client.setTcpNoDelay(true);
+                InputStream in = client.getInputStream();
+                byte[] head = readHead(in);
+                String headers = new String(head, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+                backend.setTcpNoDelay(true);
+                backend.connect(headers.matches("(?s).*\r\nupgrade:\\s*websocket.*") ? wsTarget : httpTarget);
+                backend.getOutputStream().write(head);
+                PUMPS.name("license-stub-upstream").start(() -> pump(in, backend));
+                // Backend đóng (kể cả HttpServer đóng keep-alive): đóng luôn phía client
+                pump(backend.getInputStream(), client);
+            } catch (IOException e) {
+                LOG.debug(() -> "Shared port connection: " + e);
+            }
+        }
+
+        /** Đọc tới hết header (hoặc giới hạn); có thể lấy thêm vài byte body, chúng được chuyển tiếp cùng. */
+        private static byte[] readHead(InputStream in) throws IOException {
+            byte[] buffer = new byte[MAX_HEAD_BYTES];
+            int length = 0;
+            while (length < buffer.length && indexOf(buffer, length, HEAD_END) < 0) {
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private static int indexOf(byte[] buffer, int length, byte[] target) {
+            for (int i = 0; i + target.length <= length; i++) {
+                if (Arrays.equals(buffer, i, i + target.length, target, 0, target.length)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void pump(InputStream in, Socket to) {
+            try {
+                in.transferTo(to.getOutputStream());
+                to.shutdownOutput();
+            } catch (IOException e) {
+                // một phía đã đóng
+            }
+        }
+    }
+
+    /** Tham số query: tên đã giải mã, giá trị còn nguyên dạng mã hóa (giải mã bằng {@link #decode}). */
+    private static Map<String, String> queryParams(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8), pair.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+
+    private static String decode(String rawValue) {
+        return rawValue == null ? null : URLDecoder.decode(rawValue, StandardCharsets.UTF_8);
+    }
+}
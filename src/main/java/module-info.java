@@ -3,6 +3,7 @@ module com.hsf {
     requires javafx.fxml;
     requires javafx.graphics;
     requires java.net.http;
+    requires jdk.httpserver;
     requires com.google.gson;
     requires Java.WebSocket;
 
@@ -0,0 +1,122 @@
+package com.hsf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class EndpointSelectorTest {
+
+    private static final long MS = 1_000_000;
+
+    private final EndpointSelector selector = new EndpointSelector(
+            List.of("http://a.example", "http://b.example"), Duration.ofMillis(200));
+    private final EndpointSelector.Endpoint a = selector.getEndpoints().get(0);
+    private final EndpointSelector.Endpoint b = selector.getEndpoints().get(1);
+
+    @Test
+    void rejectsEmptyAndMalformedLists() {
+        assertThrows(IllegalArgumentException.class, () -> new EndpointSelector(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> EndpointSelector.of("http://bad host"));
+    }
+
+    @Test
+    void triesUnmeasuredEndpointsFirst() {
+        assertEquals(a, selector.pick());
+        selector.onSuccess(a, 10 * MS);
+        assertEquals(b, selector.pick());
+    }
+
+    @Test
+    void prefersLowerLatency() {
+        selector.onSuccess(a, 100 * MS);
+        selector.onSuccess(b, 50 * MS);
+        assertEquals(List.of(b, a), selector.candidates(2));
+    }
+
+    @Test
+    void keepsPreferredEndpointUnlessOtherIsClearlyFaster() {
+        selector.onSuccess(b, 90 * MS);
+        selector.onSuccess(a, 100 * MS);
+        // 100 / 1.2 < 90: không đổi endpoint chỉ vì nhanh hơn một chút
+        assertEquals(a, selector.pick());
+    }
+
+    @Test
+    void smoothsLatencyWithEwma() {
+        selector.onSuccess(b, 65 * MS);
+        selector.onSuccess(a, 100 * MS);
+        selector.onSuccess(a, 10 * MS);
+        // EWMA của a: 0.3 * 10 + 0.7 * 100 = 73ms, /1.2 = 60.8ms < 65ms
+        assertEquals(a, selector.pick());
+
+        selector.onSuccess(b, 50 * MS);
+        selector.onSuccess(b, 50 * MS);
+        // b: 0.3 * 50 + 0.7 * (0.3 * 50 + 0.7 * 65) = 57.35ms, là endpoint ưu tiên; a: 73ms
+        assertEquals(b, selector.pick());
+    }
+
+    @Test
+    void opensCircuitAfterConsecutiveFailures() {
+        selector.onSuccess(b, 100 * MS);
+        selector.onSuccess(a, 10 * MS);
+        selector.onFailure(a);
+        selector.onFailure(a);
+        assertEquals(a, selector.pick());
+        selector.onFailure(a);
+        assertEquals(List.of(b, a), selector.candidates(2));
+    }
+
+    @Test
+    void successResetsFailureCount() {
+        selector.onSuccess(b, 100 * MS);
+        selector.onFailure(a);
+        selector.onFailure(a);
+        selector.onSuccess(a, 10 * MS);
+        selector.onFailure(a);
+        assertEquals(a, selector.pick());
+    }
+
+    @Test
+    void sendsOneTrialAfterOpenDuration() throws InterruptedException {
+        tripA();
+        Thread.sleep(250);
+        assertEquals(List.of(a, b), selector.candidates(2));
+        // Lượt thử đã được cấp: các request khác vẫn tránh a
+        assertEquals(List.of(b, a), selector.candidates(2));
+
+        selector.onSuccess(a, 10 * MS);
+        assertEquals(a, selector.pick());
+    }
+
+    @Test
+    void failedTrialKeepsCircuitOpen() throws InterruptedException {
+        tripA();
+        Thread.sleep(250);
+        assertEquals(a, selector.pick());
+        selector.onFailure(a);
+        assertEquals(List.of(b, a), selector.candidates(2));
+        Thread.sleep(250);
+        assertEquals(a, selector.pick());
+    }
+
+    @Test
+    void stillReturnsOpenEndpointsWhenAllAreDown() {
+        for (int i = 0; i < 3; i++) {
+            selector.onFailure(a);
+            selector.onFailure(b);
+        }
+        assertEquals(2, selector.candidates(5).size());
+    }
+
+    private void tripA() {
+        selector.onSuccess(b, 100 * MS);
+        for (int i = 0; i < 3; i++) {
+            selector.onFailure(a);
+        }
+        assertEquals(List.of(b, a), selector.candidates(2));
+    }
+}
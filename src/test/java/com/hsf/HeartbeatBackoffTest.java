@@ -0,0 +1,94 @@
+package com.hsf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+class HeartbeatBackoffTest {
+
+    private static final Duration BASE = Duration.ofSeconds(10);
+    private static final Duration MAX = Duration.ofMinutes(5);
+
+    @RepeatedTest(20)
+    void usesBasePeriodWithJitterWhenHealthy() {
+        long delayMs = new HeartbeatBackoff(BASE, MAX).nextDelay().toMillis();
+        assertTrue(delayMs >= 9_000 && delayMs <= 11_000, "delay " + delayMs);
+    }
+
+    @RepeatedTest(20)
+    void followsServerHintOnSuccess() {
+        HeartbeatBackoff backoff = new HeartbeatBackoff(BASE, MAX);
+        backoff.onSuccess(Duration.ofSeconds(60));
+        long delayMs = backoff.nextDelay().toMillis();
+        assertTrue(delayMs >= 54_000 && delayMs <= 66_000, "delay " + delayMs);
+    }
+
+    @Test
+    void clampsServerHint() {
+        HeartbeatBackoff backoff = new HeartbeatBackoff(BASE, MAX);
+        backoff.setServerHint(Duration.ofHours(1));
+        assertTrue(backoff.nextDelay().compareTo(MAX.plus(MAX.dividedBy(10))) <= 0);
+        backoff.setServerHint(Duration.ZERO);
+        assertTrue(backoff.nextDelay().toMillis() >= 900);
+    }
+
+    @RepeatedTest(20)
+    void growsExponentiallyUpToMax() {
+        HeartbeatBackoff backoff = new HeartbeatBackoff(BASE, MAX);
+        backoff.onFailure(null);
+        long first = backoff.nextDelay().toMillis();
+        assertTrue(first >= 10_000 && first <= 20_000, "delay " + first);
+        backoff.onFailure(null);
+        long second = backoff.nextDelay().toMillis();
+        assertTrue(second >= 20_000 && second <= 40_000, "delay " + second);
+        for (int i = 0; i < 30; i++) {
+            backoff.onFailure(null);
+        }
+        long capped = backoff.nextDelay().toMillis();
+        assertTrue(capped >= MAX.toMillis() / 2 && capped <= MAX.toMillis(), "delay " + capped);
+    }
+
+    @RepeatedTest(20)
+    void failureBackoffStartsFromLongerServerHint() {
+        HeartbeatBackoff backoff = new HeartbeatBackoff(BASE, MAX);
+        backoff.onSuccess(Duration.ofSeconds(30));
+        backoff.onFailure(null);
+        long delayMs = backoff.nextDelay().toMillis();
+        assertTrue(delayMs >= 30_000 && delayMs <= 60_000, "delay " + delayMs);
+    }
+
+    @RepeatedTest(20)
+    void respectsRetryAfter() {
+        HeartbeatBackoff backoff = new HeartbeatBackoff(BASE, MAX);
+        backoff.onFailure(Duration.ofSeconds(120));
+        assertEquals(120_000, backoff.nextDelay().toMillis());
+    }
+
+    @RepeatedTest(20)
+    void returnsToBasePeriodAfterRecovery() {
+        HeartbeatBackoff backoff = new HeartbeatBackoff(BASE, MAX);
+        for (int i = 0; i < 5; i++) {
+            backoff.onFailure(Duration.ofSeconds(120));
+        }
+        backoff.onSuccess(null);
+        assertEquals(0, backoff.getConsecutiveFailures());
+        long delayMs = backoff.nextDelay().toMillis();
+        assertTrue(delayMs >= 9_000 && delayMs <= 11_000, "delay " + delayMs);
+    }
+
+    @Test
+    void classifiesTransientStatusCodes() {
+        assertTrue(HeartbeatBackoff.isTransient(500));
+        assertTrue(HeartbeatBackoff.isTransient(503));
+        assertTrue(HeartbeatBackoff.isTransient(408));
+        assertTrue(HeartbeatBackoff.isTransient(429));
+        assertFalse(HeartbeatBackoff.isTransient(400));
+        assertFalse(HeartbeatBackoff.isTransient(403));
+        assertFalse(HeartbeatBackoff.isTransient(404));
+    }
+}
@@ -0,0 +1,81 @@
+package com.hsf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LicenseJsonTest {
+
+    @Test
+    void decodesPushFields() {
+        PushMessage push = LicenseJson.decodePush(
+                "{\"type\":\"LOCK\",\"seq\":12,\"licenseKey\":\"KEY-1\",\"reason\":\"Revoked\",\"extra\":{\"a\":[1]}}");
+        assertEquals(new PushMessage("LOCK", "Revoked", 12, "KEY-1"), push);
+    }
+
+    @Test
+    void copiesNestedDataVerbatim() {
+        String data = "{\"used\":3,\"limit\":5,\"tags\":[\"a\",true,null,{\"x\":-1.50}],\"empty\":{}}";
+        PushMessage push = LicenseJson.decodePush("{\"type\":\"QUOTA\",\"data\":" + data + ",\"seq\":3}");
+        assertEquals(data, push.data());
+        assertEquals(3, push.seq());
+    }
+
+    @Test
+    void keepsNumberSpelling() {
+        assertEquals("1.0", LicenseJson.decodePush("{\"type\":\"CONFIG\",\"data\":1.0}").data());
+        assertEquals("12345678901234567890",
+                LicenseJson.decodePush("{\"type\":\"CONFIG\",\"data\":12345678901234567890}").data());
+    }
+
+    @Test
+    void copiesScalarAndArrayData() {
+        assertEquals("\"text\"", LicenseJson.decodePush("{\"type\":\"T\",\"data\":\"text\"}").data());
+        assertEquals("false", LicenseJson.decodePush("{\"type\":\"T\",\"data\":false}").data());
+        assertEquals("[[],[1,2]]", LicenseJson.decodePush("{\"type\":\"T\",\"data\":[[],[1,2]]}").data());
+    }
+
+    @Test
+    void escapesStringsInData() {
+        String data = "{\"msg\":\"line\\nquote\\\"ä\"}";
+        PushMessage push = LicenseJson.decodePush("{\"type\":\"T\",\"data\":" + data + "}");
+        assertEquals(data, push.data());
+    }
+
+    @Test
+    void treatsNullDataAsAbsent() {
+        assertNull(LicenseJson.decodePush("{\"type\":\"T\",\"data\":null}").data());
+    }
+
+    @Test
+    void roundTripsThroughEncodePush() {
+        PushMessage message = new PushMessage("QUOTA", "r", 9, "KEY", "{\"used\":[1,2],\"ok\":true}");
+        assertEquals(message, LicenseJson.decodePush(LicenseJson.encodePush(message)));
+    }
+
+    @Test
+    void rejectsMalformedFrames() {
+        assertNull(LicenseJson.decodePush("not json"));
+        assertNull(LicenseJson.decodePush("[1,2]"));
+        assertNull(LicenseJson.decodePush("{\"type\":\"T\",\"data\":{\"a\":1}"));
+        assertNull(LicenseJson.decodePush("{\"type\":\"T\",\"data\":[1,2}"));
+    }
+
+    @Test
+    void decodesBatchFailures() {
+        Map<String, String> failures = LicenseJson.decodeBatchFailures(
+                "{\"results\":[{\"licenseKey\":\"A\",\"ok\":true},{\"licenseKey\":\"B\",\"ok\":false,\"message\":\"Expired\"}]}");
+        assertEquals(Map.of("B", "Expired"), failures);
+        assertEquals(Map.of(), LicenseJson.decodeBatchFailures("oops"));
+    }
+
+    @Test
+    void encodesBatch() {
+        assertEquals("{\"deviceId\":\"D\",\"licenses\":[{\"licenseKey\":\"A\",\"productName\":\"P\"},{\"licenseKey\":\"B\"}]}",
+                LicenseJson.encodeBatch("D", List.of(new LicenseRequest("A", "D", "P"), new LicenseRequest("B", "D", null))));
+    }
+}
@@ -0,0 +1,98 @@
+package com.hsf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LicenseMetricsTest {
+
+    private static final int LAST_INDEX = LicenseMetrics.Histogram.indexOf(Long.MAX_VALUE);
+
+    @Test
+    void smallValuesHaveExactBuckets() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, LicenseMetrics.Histogram.indexOf(value));
+            assertEquals(value, LicenseMetrics.Histogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (int index = 0; index < LAST_INDEX; index++) {
+            long upper = LicenseMetrics.Histogram.upperBoundOf(index);
+            assertEquals(index, LicenseMetrics.Histogram.indexOf(upper), "upper bound of " + index);
+            assertEquals(index + 1, LicenseMetrics.Histogram.indexOf(upper + 1), "value after " + index);
+        }
+    }
+
+    @Test
+    void bucketWidthStaysWithinRelativeError() {
+        for (long value = 8; value < 1L << 40; value = value * 3 / 2 + 1) {
+            long upper = LicenseMetrics.Histogram.upperBoundOf(LicenseMetrics.Histogram.indexOf(value));
+            assertTrue(upper >= value && upper - value <= value / 8, "value " + value + " upper " + upper);
+        }
+    }
+
+    @Test
+    void hugeValuesGoToLastBucket() {
+        assertEquals(LAST_INDEX, LicenseMetrics.Histogram.indexOf(1L << 50));
+        assertTrue(LicenseMetrics.Histogram.upperBoundOf(LAST_INDEX) >= (1L << 40));
+    }
+
+    @Test
+    void percentilesAreWithinBucketError() {
+        LicenseMetrics.Histogram histogram = new LicenseMetrics.Histogram();
+        for (int micros = 1; micros <= 10_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+        assertEquals(10_000, histogram.count());
+        assertEquals(10_000, histogram.maxMicros());
+        assertWithin(5_000, histogram.percentileMicros(0.5));
+        assertWithin(9_900, histogram.percentileMicros(0.99));
+        assertEquals(10_000, histogram.percentileMicros(1.0));
+        assertEquals(50_005_000 / 1e6, histogram.sumSeconds(), 1e-9);
+    }
+
+    @Test
+    void percentileNeverExceedsMax() {
+        LicenseMetrics.Histogram histogram = new LicenseMetrics.Histogram();
+        histogram.recordMicros(1_000_001);
+        assertEquals(1_000_001, histogram.percentileMicros(0.999));
+    }
+
+    @Test
+    void emptyHistogramAndNegativeValues() {
+        LicenseMetrics.Histogram histogram = new LicenseMetrics.Histogram();
+        assertEquals(0, histogram.percentileMicros(0.5));
+        histogram.recordNanos(-5_000);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.maxMicros());
+    }
+
+    @Test
+    void seriesNamesAndLookup() {
+        LicenseMetrics metrics = new LicenseMetrics();
+        assertEquals("m{a=\"1\",b=\"q\\\"\"}", LicenseMetrics.series("m", "a", "1", "b", "q\""));
+        metrics.counter("requests_total", "endpoint", "x").add(3);
+        metrics.counter("requests_total", "endpoint", "y").increment();
+        metrics.counter("other_total").increment();
+        assertEquals(Map.of("requests_total{endpoint=\"x\"}", 3L, "requests_total{endpoint=\"y\"}", 1L),
+                metrics.counterValues("requests_total"));
+    }
+
+    @Test
+    void exportsHistogramAsSummary() {
+        LicenseMetrics metrics = new LicenseMetrics();
+        metrics.histogram("latency_seconds", "endpoint", "x").recordMicros(2_000);
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("latency_seconds{endpoint=\"x\",quantile=\"0.5\"} 0.002\n"), text);
+        assertTrue(text.contains("latency_seconds_count{endpoint=\"x\"} 1\n"), text);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 8, "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,97 @@
+package com.hsf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.java_websocket.handshake.HandshakeImpl1Server;
+import org.junit.jupiter.api.Test;
+
+class LicenseWebSocketClientTest {
+
+    private final List<Long> delivered = new ArrayList<>();
+    private final LicenseWebSocketClient client = LicenseWebSocketClient.create("ws://127.0.0.1:9",
+            () -> Set.of("KEY"), "device", new LicenseWebSocketClient.Listener() {
+                @Override
+                public void onChannelOpen() {
+                }
+
+                @Override
+                public void onChannelClosed() {
+                }
+
+                @Override
+                public void onPush(PushMessage message) {
+                    delivered.add(message.seq());
+                }
+            });
+
+    @Test
+    void skipsReplayedSeqOnSameEpoch() {
+        open("e1");
+        push(1, 2, 3);
+        open("e1");
+        push(2, 3, 4);
+        assertEquals(List.of(1L, 2L, 3L, 4L), delivered);
+    }
+
+    @Test
+    void resetsSeqWhenEpochChanges() {
+        open("e1");
+        push(5, 6);
+        open("e2");
+        push(1, 2, 2);
+        assertEquals(List.of(5L, 6L, 1L, 2L), delivered);
+    }
+
+    @Test
+    void resetsSeqWhenServerWithoutEpochRestarts() {
+        open(null);
+        push(5, 6);
+        open(null);
+        // Seq đầu tiên không lớn hơn lastSeq: server đã đánh số lại
+        push(1, 2, 1);
+        assertEquals(List.of(5L, 6L, 1L, 2L), delivered);
+    }
+
+    @Test
+    void detectsRestartAfterSwitchingToServerWithoutEpoch() {
+        open("e1");
+        push(5, 6);
+        open(null);
+        push(1, 2);
+        assertEquals(List.of(5L, 6L, 1L, 2L), delivered);
+    }
+
+    @Test
+    void dropsStaleSeqAfterFirstMessageOfConnection() {
+        open(null);
+        push(3, 1, 4);
+        assertEquals(List.of(3L, 4L), delivered);
+    }
+
+    @Test
+    void deliversMessagesWithoutSeq() {
+        open("e1");
+        push(2);
+        client.onMessage("{\"type\":\"CONFIG\"}");
+        assertEquals(List.of(2L, PushMessage.NO_SEQ), delivered);
+    }
+
+    private void open(String epoch) {
+        HandshakeImpl1Server handshake = new HandshakeImpl1Server();
+        handshake.setHttpStatus((short) 101);
+        if (epoch != null) {
+            handshake.put(LicenseWebSocketClient.EPOCH_HEADER, epoch);
+        }
+        client.onOpen(handshake);
+    }
+
+    private void push(long... seqs) {
+        for (long seq : seqs) {
+            client.onMessage("{\"type\":\"LOCK\",\"licenseKey\":\"KEY\",\"seq\":" + seq + "}");
+        }
+    }
+}
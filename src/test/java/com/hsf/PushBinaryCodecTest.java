@@ -0,0 +1,97 @@
+package com.hsf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class PushBinaryCodecTest {
+
+    @Test
+    void roundTripsKnownType() {
+        PushMessage message = new PushMessage("LOCK", "Revoked", 42, "KEY-1");
+        assertEquals(message, PushBinaryCodec.decode(PushBinaryCodec.encode(message)));
+    }
+
+    @Test
+    void roundTripsStringTypeWithData() {
+        PushMessage message = new PushMessage("QUOTA", null, PushMessage.NO_SEQ, null, "{\"used\":3,\"limit\":5}");
+        assertEquals(message, PushBinaryCodec.decode(PushBinaryCodec.encode(message)));
+    }
+
+    @Test
+    void roundTripsNonAsciiText() {
+        PushMessage message = new PushMessage("LOCK", "Giấy phép đã bị thu hồi", 0, "KEY-ä");
+        assertEquals(message, PushBinaryCodec.decode(PushBinaryCodec.encode(message)));
+    }
+
+    @Test
+    void roundTripsDirectBuffer() {
+        PushMessage message = new PushMessage("UNLOCK", "ok", 7, "KEY-2");
+        ByteBuffer encoded = PushBinaryCodec.encode(message);
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+        assertEquals(message, PushBinaryCodec.decode(direct));
+    }
+
+    @Test
+    void ignoresTrailingBytes() {
+        PushMessage message = new PushMessage("LOCK", "r", 1, "K", "{}");
+        ByteBuffer encoded = PushBinaryCodec.encode(message);
+        ByteBuffer extended = ByteBuffer.allocate(encoded.remaining() + 3).put(encoded).put(new byte[] {1, 2, 3}).flip();
+        assertEquals(message, PushBinaryCodec.decode(extended));
+    }
+
+    @Test
+    void rejectsWrongVersionAndUnknownCode() {
+        assertNull(PushBinaryCodec.decode(frame(2, 1, 0, 0, 0)));
+        assertNull(PushBinaryCodec.decode(frame(1, 99, 0, 0, 0)));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() {
+        byte[] full = bytes(PushBinaryCodec.encode(new PushMessage("LOCK", "reason", 5, "KEY")));
+        for (int length = 0; length < full.length; length++) {
+            assertNull(PushBinaryCodec.decode(ByteBuffer.wrap(full, 0, length)), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsStringLongerThanFrame() {
+        assertNull(PushBinaryCodec.decode(frame(1, 1, 0, 100, 'a', 'b')));
+    }
+
+    @Test
+    void rejectsNegativeStringLength() {
+        // licenseKey dài 0xFFFFFFFFFFFFFFFF: âm khi đọc thành long
+        assertNull(PushBinaryCodec.decode(frame(1, 1, 0,
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01, 0, 0)));
+    }
+
+    @Test
+    void rejectsStringLengthAboveIntRange() {
+        // 2^32 + 1: vượt int sau khi trừ 1
+        assertNull(PushBinaryCodec.decode(frame(1, 1, 0, 0x81, 0x80, 0x80, 0x80, 0x10, 0, 0)));
+    }
+
+    @Test
+    void rejectsOverlongVarint() {
+        assertNull(PushBinaryCodec.decode(frame(1, 1,
+                0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01, 0, 0)));
+    }
+
+    private static ByteBuffer frame(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length);
+        for (int value : values) {
+            buffer.put((byte) value);
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}